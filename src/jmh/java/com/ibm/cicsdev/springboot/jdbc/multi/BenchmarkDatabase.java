@@ -0,0 +1,308 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+
+/**
+ * In-memory H2 stand-in for the Db2 EMP table, and a Spring context running EmployeeService against it
+ * 
+ * Both the type2 and type4 JdbcTemplates use the same H2 database, through the same 
+ * TimedDataSource wrapper as Application uses for the JNDI DataSources.
+ * A network round trip to Db2 can be simulated by holding each connection for a fixed time.
+ */
+public class BenchmarkDatabase implements AutoCloseable
+{
+	private static final String[] DEPARTMENTS = {"A00", "B01", "C01", "D11", "D21", "E01", "E11", "E21"};
+	private static final String[] JOBS = {"PRES", "MANAGER", "ANALYST", "DESIGNER", "CLERK", "OPERATOR", "FIELDREP", "SALESREP"};
+	private static final String[] FIRST_NAMES = {"CHRISTINE", "MICHAEL", "SALLY", "JOHN", "IRVING", "EVA", "EILEEN", "THEODORE"};
+	private static final String[] LAST_NAMES = {"HAAS", "THOMPSON", "KWAN", "GEYER", "STERN", "PULASKI", "HENDERSON", "SPENSER"};
+	
+	private static int databases;
+	
+	private final int rows;
+	private final JdbcConnectionPool pool;
+	private final AnnotationConfigApplicationContext context;
+	
+	/**
+	 * Create a database and load it with employees
+	 * 
+	 * @param rows - the number of employees to load
+	 * @throws SQLException
+	 */
+	public BenchmarkDatabase(int rows) throws SQLException
+	{
+		this(rows, 0);
+	}
+	
+	
+	/**
+	 * Create a database and load it with employees
+	 * 
+	 * @param rows - the number of employees to load
+	 * @param latencyMillis - time each connection is held for when it is first obtained, to stand in for a network round trip
+	 * @throws SQLException
+	 */
+	public BenchmarkDatabase(int rows, long latencyMillis) throws SQLException
+	{
+		this.rows = rows;
+		this.pool = JdbcConnectionPool.create("jdbc:h2:mem:emp" + nextId() + ";DB_CLOSE_DELAY=-1", "sa", "");
+		this.pool.setMaxConnections(64);
+		load();
+		
+		this.context = new AnnotationConfigApplicationContext();
+		this.context.registerBean(DataSource.class, () -> new TimedDataSource(latencyMillis > 0 ? new SlowDataSource(this.pool, latencyMillis) : this.pool));
+		this.context.register(BenchmarkConfiguration.class);
+		this.context.refresh();
+	}
+	
+	
+	// Waits after getting each connection, so the connection is held as if for a round trip to the database
+	private static class SlowDataSource extends DelegatingDataSource
+	{
+		private final long latencyMillis;
+		
+		SlowDataSource(DataSource dataSource, long latencyMillis)
+		{
+			super(dataSource);
+			this.latencyMillis = latencyMillis;
+		}
+		
+		@Override
+		public Connection getConnection() throws SQLException
+		{
+			Connection con = super.getConnection();
+			try
+			{
+				Thread.sleep(this.latencyMillis);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return con;
+		}
+	}
+	
+	
+	private static synchronized int nextId()
+	{
+		return databases++;
+	}
+	
+	
+	/**
+	 * @param index - from 0 to rows - 1
+	 * @return the employee number of a loaded row - these sort in index order and 
+	 * 		   don't overlap the numeric range used by EmployeeService.addEmployee
+	 */
+	public static String empNo(int index)
+	{
+		String digits = Integer.toString(index, 36).toUpperCase();
+		return "A" + "00000".substring(digits.length()) + digits;
+	}
+	
+	
+	/**
+	 * @return the number of employees loaded
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+	
+	
+	/**
+	 * @return the EmployeeService bean
+	 */
+	public EmployeeService getEmployeeService()
+	{
+		return this.context.getBean(EmployeeService.class);
+	}
+	
+	
+	/**
+	 * @return an ObjectMapper configured as Spring Boot configures it for the application
+	 */
+	public ObjectMapper getObjectMapper()
+	{
+		return this.context.getBean(ObjectMapper.class);
+	}
+	
+	
+	/**
+	 * @return a JdbcTemplate on the database, for setting up and cleaning up benchmark data
+	 */
+	public JdbcTemplate getJdbcTemplate()
+	{
+		return new JdbcTemplate(this.pool);
+	}
+	
+	
+	/**
+	 * @param type - a bean type from the Spring context
+	 * @return the bean
+	 */
+	public <T> T getBean(Class<T> type)
+	{
+		return this.context.getBean(type);
+	}
+	
+	
+	@Override
+	public void close() 
+	{
+		this.context.close();
+		getJdbcTemplate().execute("DROP ALL OBJECTS");
+		this.pool.dispose();
+	}
+	
+	
+	// Create the EMP table and insert the employees
+	private void load() throws SQLException
+	{
+		try (Connection con = this.pool.getConnection(); Statement stmt = con.createStatement())
+		{
+			stmt.execute("CREATE TABLE emp ("
+					+ "EMPNO CHAR(6) NOT NULL PRIMARY KEY, "
+					+ "FIRSTNME VARCHAR(12) NOT NULL, "
+					+ "MIDINIT CHAR(1) NOT NULL, "
+					+ "LASTNAME VARCHAR(15) NOT NULL, "
+					+ "WORKDEPT CHAR(3), "
+					+ "PHONENO CHAR(4), "
+					+ "HIREDATE DATE, "
+					+ "JOB CHAR(8), "
+					+ "EDLEVEL SMALLINT, "
+					+ "SEX CHAR(1), "
+					+ "BIRTHDATE DATE, "
+					+ "SALARY DECIMAL(9, 2), "
+					+ "BONUS DECIMAL(9, 2), "
+					+ "COMM DECIMAL(9, 2))");
+			
+			Random random = new Random(42);
+			try (PreparedStatement ps = con.prepareStatement("INSERT INTO emp VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)"))
+			{
+				for (int i = 0; i < this.rows; i++)
+				{
+					ps.setString(1, empNo(i));
+					ps.setString(2, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+					ps.setString(3, String.valueOf((char) ('A' + random.nextInt(26))));
+					ps.setString(4, LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+					ps.setString(5, DEPARTMENTS[random.nextInt(DEPARTMENTS.length)]);
+					ps.setString(6, String.format("%04d", random.nextInt(10000)));
+					ps.setDate(7, Date.valueOf(LocalDate.of(2000, 1, 1).plusDays(random.nextInt(7000))));
+					ps.setString(8, JOBS[random.nextInt(JOBS.length)]);
+					ps.setInt(9, 12 + random.nextInt(9));
+					ps.setString(10, random.nextBoolean() ? "M" : "F");
+					ps.setDate(11, Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(18000))));
+					ps.setLong(12, 20000 + random.nextInt(150000));
+					ps.setLong(13, random.nextInt(1000));
+					ps.setLong(14, random.nextInt(4000));
+					ps.addBatch();
+					
+					if (i % 1000 == 999)
+					{
+						ps.executeBatch();
+					}
+				}
+				ps.executeBatch();
+			}
+		}
+	}
+	
+	
+	/**
+	 * The beans EmployeeService needs, with the JNDI DataSources replaced by the H2 database
+	 */
+	@Configuration
+	@Import({EmployeeService.class, EmployeeCache.class, EmployeeWriteEvents.class, SalaryWriteBehind.class, EmployeeMetrics.class, DataSourceRouter.class, HedgedLookup.class, DataSourceExecutors.class,
+		RandomEmpnoAllocator.class, SequenceEmpnoAllocator.class, TableEmpnoAllocator.class, EmployeeSnapshot.class, DataSourceWarmUp.class,
+		DataSourceVerifier.class, EmployeeChangeFeed.class, EmployeeVersions.class})
+	static class BenchmarkConfiguration
+	{
+		@Autowired
+		private DataSource dataSource;
+		
+		@Bean
+		@Qualifier("type2JdbcTemplate")
+		public JdbcTemplate getType2JdbcTemplate() 
+		{
+			return new JdbcTemplate(this.dataSource);
+		}
+		
+		@Bean
+		@Qualifier("type4JdbcTemplate")
+		public JdbcTemplate getType4JdbcTemplate() 
+		{
+			return new JdbcTemplate(this.dataSource);
+		}
+		
+		@Bean
+		public PlatformTransactionManager getTransactionManager()
+		{
+			return new DataSourceTransactionManager(this.dataSource);
+		}
+		
+		@Bean
+		@Primary
+		public ThreadFactory getThreadFactory()
+		{
+			return Executors.defaultThreadFactory();
+		}
+		
+		// as Application, but set by the benchmark with a system property
+		@Bean
+		@Qualifier("virtualThreadFactory")
+		public ThreadFactory getVirtualThreadFactory()
+		{
+			return Boolean.getBoolean("employee.async.virtualThreads") ? Application.virtualThreadFactory() : null;
+		}
+		
+		@Bean
+		public ObjectMapper getObjectMapper()
+		{
+			// as Spring Boot configures it, plus the customizer from Application
+			return Jackson2ObjectMapperBuilder.json()
+					.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+					.filters(EmployeeFields.ALL_FILTERS)
+					.modulesToInstall(EmployeeSerializer.module())
+					.build();
+		}
+	}
+}
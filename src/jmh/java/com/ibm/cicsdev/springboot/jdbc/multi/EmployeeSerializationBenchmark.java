@@ -0,0 +1,114 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+
+/**
+ * Throughput of rendering Employee lists as JSON, as the REST controller does
+ * 
+ * serialize uses EmployeeSerializer, as the application does, serializeBean the reflective 
+ * bean serializer it replaces, and serializeCbor the binary CBOR representation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeSerializationBenchmark 
+{
+	@Param({"1", "1000"})
+	private int employees;
+	
+	private List<Employee> list;
+	private ObjectMapper objectMapper;
+	private ObjectWriter projectedWriter;
+	private ObjectMapper beanObjectMapper;
+	private ObjectMapper cborObjectMapper;
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException
+	{
+		try (BenchmarkDatabase database = new BenchmarkDatabase(this.employees))
+		{
+			this.list = database.getEmployeeService().selectAll("type4", EmployeeFields.ALL);
+			this.objectMapper = database.getObjectMapper();
+		}
+		this.projectedWriter = this.objectMapper.writer(EmployeeFields.parse("empNo,firstName,lastName").getFilters());
+		
+		// as BenchmarkDatabase.getObjectMapper, without EmployeeSerializer
+		this.beanObjectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+				.filters(EmployeeFields.ALL_FILTERS)
+				.build();
+		
+		// as Application.cborHttpMessageConverter
+		this.cborObjectMapper = Jackson2ObjectMapperBuilder.json()
+				.featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+				.filters(EmployeeFields.ALL_FILTERS)
+				.modulesToInstall(EmployeeSerializer.module())
+				.factory(new CBORFactory())
+				.build();
+	}
+	
+	
+	@Benchmark
+	public byte[] serialize() throws JsonProcessingException
+	{
+		return this.objectMapper.writeValueAsBytes(this.list);
+	}
+	
+	
+	@Benchmark
+	public byte[] serializeBean() throws JsonProcessingException
+	{
+		return this.beanObjectMapper.writeValueAsBytes(this.list);
+	}
+	
+	
+	@Benchmark
+	public byte[] serializeCbor() throws JsonProcessingException
+	{
+		return this.cborObjectMapper.writeValueAsBytes(this.list);
+	}
+	
+	
+	@Benchmark
+	public byte[] serializeProjected() throws JsonProcessingException
+	{
+		return this.projectedWriter.writeValueAsBytes(this.list);
+	}
+}
@@ -0,0 +1,191 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Throughput of each EmployeeService operation against an H2 EMP table
+ * 
+ * Run with "-prof gc" (the default in the benchmark profile) to see the allocation rate per operation.
+ * The table size can be changed with "-p rows=1000000".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeServiceBenchmark 
+{
+	@Param({"10000"})
+	private int rows;
+	
+	@Param({"type4"})
+	private String jdbcType;
+	
+	private BenchmarkDatabase database;
+	private EmployeeService employeeService;
+	
+	// numbers for the employees added by a unit of work, which don't overlap the loaded rows or addEmployee
+	private final AtomicInteger unitOfWorkEmpNos = new AtomicInteger();
+	
+	
+	/**
+	 * A random number generator for each benchmark thread, used to pick employees
+	 */
+	@State(Scope.Thread)
+	public static class Keys
+	{
+		private final SplittableRandom random = new SplittableRandom();
+		
+		String next(int rows)
+		{
+			return BenchmarkDatabase.empNo(this.random.nextInt(rows));
+		}
+	}
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException
+	{
+		this.database = new BenchmarkDatabase(this.rows);
+		this.employeeService = this.database.getEmployeeService();
+	}
+	
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.database.close();
+	}
+	
+	
+	@Benchmark
+	public List<Employee> selectAll()
+	{
+		return this.employeeService.selectAll(this.jdbcType, EmployeeFields.ALL);
+	}
+	
+	
+	@Benchmark
+	public void streamAll(Blackhole blackhole)
+	{
+		this.employeeService.streamAll(this.jdbcType, EmployeeFields.ALL, blackhole::consume);
+	}
+	
+	
+	@Benchmark
+	public EmployeePage selectPage(Keys keys)
+	{
+		return this.employeeService.selectPage(this.jdbcType, keys.next(this.rows), 100, EmployeeFields.ALL);
+	}
+	
+	
+	@Benchmark
+	public List<Employee> selectWhereEmpno(Keys keys)
+	{
+		return this.employeeService.selectWhereEmpno(this.jdbcType, keys.next(this.rows), EmployeeFields.ALL);
+	}
+	
+	
+	// 50 employees looked up one at a time, as a client calling /listEmployee 50 times would
+	@Benchmark
+	public int selectWhereEmpno50(Keys keys)
+	{
+		int found = 0;
+		for (int i = 0; i < 50; i++)
+		{
+			found += this.employeeService.selectWhereEmpno(this.jdbcType, keys.next(this.rows), EmployeeFields.ALL).size();
+		}
+		return found;
+	}
+	
+	
+	// the same 50 employees looked up by one /listEmployees request
+	@Benchmark
+	public EmployeeLookup selectWhereEmpnoIn50(Keys keys)
+	{
+		List<String> empNos = new ArrayList<>(50);
+		for (int i = 0; i < 50; i++)
+		{
+			empNos.add(keys.next(this.rows));
+		}
+		return this.employeeService.selectWhereEmpnoIn(this.jdbcType, empNos, EmployeeFields.ALL);
+	}
+	
+	
+	@Benchmark
+	public String updateEmployee(Keys keys)
+	{
+		return this.employeeService.updateEmployee(this.jdbcType, 50000, keys.next(this.rows));
+	}
+	
+	
+	// an insert followed by a delete of the same employee, so the table stays the same size
+	@Benchmark
+	public String addAndDeleteEmployee()
+	{
+		String added = this.employeeService.addEmployee(this.jdbcType, "BERTIE", "BANANA");
+		
+		// "employee 123456 added"
+		String empNo = added.substring("employee ".length(), "employee ".length() + 6);
+		return this.employeeService.deleteEmployee(this.jdbcType, empNo);
+	}
+	
+	
+	// an add, an update and a delete made by three calls, as three /{type}/... requests would
+	@Benchmark
+	public String addUpdateDeleteSeparately(Keys keys)
+	{
+		String added = this.employeeService.addEmployee(this.jdbcType, "BERTIE", "BANANA");
+		this.employeeService.updateEmployee(this.jdbcType, 50000, keys.next(this.rows));
+		
+		String empNo = added.substring("employee ".length(), "employee ".length() + 6);
+		return this.employeeService.deleteEmployee(this.jdbcType, empNo);
+	}
+	
+	
+	// the same changes made by one /{type}/employees/unitOfWork request
+	@Benchmark
+	public List<EmployeeOperationResult> addUpdateDeleteUnitOfWork(Keys keys)
+	{
+		String digits = Integer.toString(this.unitOfWorkEmpNos.getAndIncrement() & 0xFFFFFF, 36).toUpperCase();
+		String empNo = "B" + "00000".substring(digits.length()) + digits;
+		
+		List<EmployeeOperation> operations = new ArrayList<>(3);
+		operations.add(new EmployeeOperation(EmployeeOperation.ADD, empNo, "BERTIE", "BANANA", null));
+		operations.add(new EmployeeOperation(EmployeeOperation.UPDATE, keys.next(this.rows), null, null, 50000));
+		operations.add(new EmployeeOperation(EmployeeOperation.DELETE, empNo, null, null, null));
+		return this.employeeService.applyOperations(this.jdbcType, operations);
+	}
+}
@@ -0,0 +1,128 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares department totals summed by the database (/{type}/stats/byDept) with the same totals
+ * summed by a client from every employee (/{type}/allEmployees) or from the stream of employees
+ *
+ * H2 runs in the same JVM, so this understates the saving, which against Db2 is mostly the rows
+ * that no longer cross the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeStatsBenchmark
+{
+	@Param({"10000"})
+	private int rows;
+
+	@Param({"type4"})
+	private String jdbcType;
+
+	private BenchmarkDatabase database;
+	private EmployeeService employeeService;
+
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException
+	{
+		this.database = new BenchmarkDatabase(this.rows);
+		this.employeeService = this.database.getEmployeeService();
+	}
+
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.database.close();
+	}
+
+
+	@Benchmark
+	public List<PayrollSummary> pushdownByDept()
+	{
+		return this.employeeService.departmentStatistics(this.jdbcType);
+	}
+
+
+	@Benchmark
+	public PayrollSummary pushdownPayroll()
+	{
+		return this.employeeService.payroll(this.jdbcType);
+	}
+
+
+	@Benchmark
+	public List<PayrollSummary> clientSideByDept()
+	{
+		Totals totals = new Totals();
+		this.employeeService.selectAll(this.jdbcType, EmployeeFields.ALL).forEach(totals::add);
+		return totals.summaries();
+	}
+
+
+	@Benchmark
+	public List<PayrollSummary> clientSideStreamByDept()
+	{
+		Totals totals = new Totals();
+		this.employeeService.streamAll(this.jdbcType, EmployeeFields.ALL, totals::add);
+		return totals.summaries();
+	}
+
+
+	// Department totals, as a client would sum them
+	private static class Totals
+	{
+		private final Map<String, long[]> departments = new TreeMap<>();
+
+		void add(Employee employee)
+		{
+			long[] totals = this.departments.computeIfAbsent(String.valueOf(employee.getWorkdept()), d -> new long[4]);
+			totals[0]++;
+			totals[1] += employee.getSalary();
+			totals[2] += employee.getBonus();
+			totals[3] += employee.getComm();
+		}
+
+		List<PayrollSummary> summaries()
+		{
+			List<PayrollSummary> summaries = new ArrayList<>(this.departments.size());
+			this.departments.forEach((workdept, totals) -> summaries.add(new PayrollSummary(workdept, totals[0], totals[1], totals[2], totals[3])));
+			return summaries;
+		}
+	}
+}
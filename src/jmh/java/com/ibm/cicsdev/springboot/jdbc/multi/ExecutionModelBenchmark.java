@@ -0,0 +1,151 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Time to complete a burst of concurrent single employee lookups, for each way of running them
+ *
+ *    threadPerRequest - a platform thread for each request, each calling EmployeeService directly,
+ *                       as the servlet container does for the synchronous endpoints
+ *    platform         - the /async model, with a pool of platform threads the size of the connection pool
+ *    virtual          - the /async model, with a virtual thread for each request (Java 21 or later,
+ *                       otherwise the same as platform)
+ *
+ * Each connection is held for latencyMillis to stand in for the network round trip to Db2.
+ * The peak number of live threads is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModelBenchmark
+{
+	@Param({"threadPerRequest", "platform", "virtual"})
+	private String mode;
+	
+	@Param({"2000"})
+	private int requests;
+	
+	@Param({"2"})
+	private long latencyMillis;
+	
+	// connections in the H2 pool, see BenchmarkDatabase
+	@Param({"64"})
+	private int poolSize;
+	
+	private static final int ROWS = 10000;
+	
+	private BenchmarkDatabase database;
+	private EmployeeService employeeService;
+	private DataSourceExecutors executors;
+	private ExecutorService requestThreads;
+	private final SplittableRandom random = new SplittableRandom();
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException
+	{
+		// read by DataSourceExecutors and BenchmarkDatabase when the Spring context starts
+		System.setProperty("employee.async.type4.poolSize", Integer.toString(this.poolSize));
+		System.setProperty("employee.async.queueSize", Integer.toString(this.requests));
+		System.setProperty("employee.async.virtualQueueSize", Integer.toString(this.requests));
+		System.setProperty("employee.async.virtualThreads", Boolean.toString(this.mode.equals("virtual")));
+		
+		this.database = new BenchmarkDatabase(ROWS, this.latencyMillis);
+		this.employeeService = this.database.getEmployeeService();
+		this.executors = this.database.getBean(DataSourceExecutors.class);
+		
+		if (this.mode.equals("threadPerRequest"))
+		{
+			this.requestThreads = Executors.newFixedThreadPool(this.requests);
+		}
+		else if (this.mode.equals("virtual") && !this.executors.getStatistics().get(DataSourceType.TYPE4).isVirtualThreads())
+		{
+			System.out.println("This JVM does not support virtual threads, platform threads are used");
+		}
+		
+		ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+	}
+	
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		System.out.println("Peak live threads: " + threads.getPeakThreadCount());
+		
+		if (this.requestThreads != null)
+		{
+			this.requestThreads.shutdown();
+		}
+		this.database.close();
+	}
+	
+	
+	@Benchmark
+	public int burst()
+	{
+		List<CompletableFuture<List<Employee>>> results = new ArrayList<>(this.requests);
+		for (int i = 0; i < this.requests; i++)
+		{
+			String empNo = BenchmarkDatabase.empNo(this.random.nextInt(ROWS));
+			if (this.requestThreads != null)
+			{
+				results.add(CompletableFuture.supplyAsync(() -> lookup(empNo), this.requestThreads));
+			}
+			else
+			{
+				results.add(this.executors.supplyAsync(DataSourceType.TYPE4, () -> lookup(empNo)));
+			}
+		}
+		
+		int found = 0;
+		for (CompletableFuture<List<Employee>> result : results)
+		{
+			found += result.join().size();
+		}
+		return found;
+	}
+	
+	
+	private List<Employee> lookup(String empNo)
+	{
+		return this.employeeService.selectWhereEmpno("type4", empNo, EmployeeFields.ALL);
+	}
+}
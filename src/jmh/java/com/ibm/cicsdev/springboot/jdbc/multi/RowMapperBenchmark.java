@@ -0,0 +1,100 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+
+/**
+ * Compares EmployeeRowMapper, which reads columns by position, with the original 
+ * row mapping lambda, which looked up every column by name on every row
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark 
+{
+	// the mapping lambda EmployeeService used before EmployeeRowMapper
+	private static final RowMapper<Employee> BY_NAME = (rs, rowNum) ->
+			new Employee(
+					rs.getString("EMPNO"),
+					rs.getString("FIRSTNME"),
+					rs.getString("MIDINIT"),
+					rs.getString("LASTNAME"),
+					rs.getString("WORKDEPT"),
+					rs.getString("PHONENO"),
+					rs.getDate("HIREDATE"),
+					rs.getString("JOB"),
+					rs.getInt("EDLEVEL"),
+					rs.getString("SEX"),
+					rs.getString("BIRTHDATE"),
+					rs.getLong("SALARY"),
+					rs.getLong("BONUS"),
+					rs.getLong("COMM"));
+	
+	private static final String SQL = "SELECT " + EmployeeFields.ALL.getColumnList() + " FROM emp";
+	
+	@Param({"10000"})
+	private int rows;
+	
+	private BenchmarkDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	
+	
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException
+	{
+		this.database = new BenchmarkDatabase(this.rows);
+		this.jdbcTemplate = this.database.getJdbcTemplate();
+	}
+	
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		this.database.close();
+	}
+	
+	
+	@Benchmark
+	public List<Employee> byName()
+	{
+		return this.jdbcTemplate.query(SQL, BY_NAME);
+	}
+	
+	
+	@Benchmark
+	public List<Employee> byPosition()
+	{
+		return this.jdbcTemplate.query(SQL, new EmployeeRowMapper());
+	}
+}
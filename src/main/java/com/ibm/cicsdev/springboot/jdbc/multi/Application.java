@@ -10,14 +10,31 @@
 
 package com.ibm.cicsdev.springboot.jdbc.multi; 
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.naming.NamingException;
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.lookup.JndiDataSourceLookup;
+import org.springframework.jndi.JndiTemplate;
+import org.springframework.transaction.jta.JtaTransactionManager;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 
 /**
  * 
@@ -33,6 +50,8 @@ import org.springframework.jdbc.datasource.lookup.JndiDataSourceLookup;
 @SpringBootApplication
 public class Application 
 {
+	private static final Logger LOG = LoggerFactory.getLogger(Application.class);
+	
 	// Helper Class to lookup our DataSources from JNDI (Liberty server.xml)
 	JndiDataSourceLookup dataSourceLookup = new JndiDataSourceLookup();
 		
@@ -51,7 +70,8 @@ public class Application
     public DataSource getType2DataSource() 
     {    	    			
     	//return this.dataSourceLookup.getDataSource(type2JNDIName);    	
-    	return this.dataSourceLookup.getDataSource("jdbc/t2DataSource");
+    	// wrapped so that connection acquisition is timed (see EmployeeMetrics)
+    	return new TimedDataSource(this.dataSourceLookup.getDataSource("jdbc/t2DataSource"));
     }
 	
 	
@@ -60,7 +80,8 @@ public class Application
 	public DataSource getType4DataSource() 
 	{    	    			
 	   	//return this.dataSourceLookup.getDataSource(type4JNDIName);    	
-	   	return this.dataSourceLookup.getDataSource("jdbc/t4DataSource");
+	   	// wrapped so that connection acquisition is timed (see EmployeeMetrics)
+	   	return new TimedDataSource(this.dataSourceLookup.getDataSource("jdbc/t4DataSource"));
 	}
     
 	
@@ -81,4 +102,108 @@ public class Application
     	return new JdbcTemplate(getType4DataSource());    	
     }        
 
+    
+    // Thread factory for work done off the request thread, such as flushing queued updates.
+    // In a CICS Liberty JVM server the default ManagedThreadFactory creates CICS enabled threads, 
+    // which are needed to use the DataSource with type 2 connectivity. The concurrent-1.0 feature 
+    // must be enabled in server.xml, otherwise plain Java threads are used.
+    @Bean
+    @Primary
+    public ThreadFactory getManagedThreadFactory()
+    {
+    	try
+    	{
+    		return new JndiTemplate().lookup("java:comp/DefaultManagedThreadFactory", ThreadFactory.class);
+    	}
+    	catch (NamingException e)
+    	{
+    		return Executors.defaultThreadFactory();
+    	}
+    }
+    
+    
+    // Thread factory for virtual threads, selected at startup with employee.async.virtualThreads=true.
+    // The /async requests on the DataSource with type 4 connectivity then run on virtual threads (see DataSourceExecutors).
+    // On a JVM without virtual threads (before Java 21) no factory is created and platform threads are used as before.
+    @Bean
+    @Qualifier("virtualThreadFactory")
+    @ConditionalOnProperty(name = "employee.async.virtualThreads", havingValue = "true")
+    public ThreadFactory getVirtualThreadFactory()
+    {
+    	ThreadFactory factory = virtualThreadFactory();
+    	if (factory == null)
+    	{
+    		LOG.warn("employee.async.virtualThreads is set but this JVM does not support virtual threads, platform threads will be used");
+    	}
+    	return factory;
+    }
+    
+    
+    /**
+     * @return a factory for virtual threads, or null if the JVM does not have them
+     */
+    static ThreadFactory virtualThreadFactory()
+    {
+    	try
+    	{
+    		// Thread.ofVirtual().name("employee-virtual-", 0).factory(), called reflectively as the sample is built for Java 8
+    		Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+    		Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+    		builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "employee-virtual-", 0L);
+    		return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    	}
+    	catch (ReflectiveOperationException e)
+    	{
+    		// not Java 21 or later - or a preview release with preview features disabled
+    		return null;
+    	}
+    }
+    
+    
+    // Transaction manager for the @Transactional endpoints, selected with employee.tx.onePhase=true.
+    // A request for type2 or type4 then commits locally on that DataSource, and only auto uses a global (XA) transaction, 
+    // through the same JtaTransactionManager that Spring Boot would otherwise create (see OnePhaseTransactionManager).
+    @Bean
+    @ConditionalOnProperty(name = "employee.tx.onePhase", havingValue = "true")
+    public OnePhaseTransactionManager getOnePhaseTransactionManager()
+    {
+    	JtaTransactionManager global = new JtaTransactionManager();
+    	global.afterPropertiesSet();
+    	return new OnePhaseTransactionManager(global, getType2DataSource(), getType4DataSource());
+    }
+    
+    
+    // Warm up the DataSources before the application is ready for requests (see DataSourceWarmUp).
+    // Runners are called once the context has started, also when the application is deployed as a WAR.
+    @Bean
+    public ApplicationRunner dataSourceWarmUpRunner(DataSourceWarmUp warmUp)
+    {
+    	return args -> warmUp.run();
+    }
+    
+    
+    // Serialize every Employee property unless a request asks for a projection (see EmployeeFields)
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer employeeFieldsCustomizer()
+    {
+    	return builder -> builder.filters(EmployeeFields.ALL_FILTERS);
+    }
+    
+    
+    // Write Employees with EmployeeSerializer rather than reflectively - Spring Boot adds Module beans to its ObjectMapper
+    @Bean
+    public Module employeeSerializerModule()
+    {
+    	return EmployeeSerializer.module();
+    }
+    
+    
+    // Answer requests with "Accept: application/cbor" in binary CBOR rather than JSON text.
+    // Built from Spring Boot's ObjectMapper builder, so it has the same filters and serializers as JSON.
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder)
+    {
+    	return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
 }
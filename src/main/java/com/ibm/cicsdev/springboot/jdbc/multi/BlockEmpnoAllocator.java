@@ -0,0 +1,125 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * Base class for employee number allocators which reserve blocks of numbers from the database
+ *
+ * Each block is reserved by one database call, which no other node (or DataSource) can be given,
+ * so numbers never collide. Numbers are then handed out from the block with a single atomic increment.
+ * Only a request which finds the block used up waits, while the next block is reserved.
+ *
+ * Numbers in a block which has not been used up when the application stops are never used.
+ */
+public abstract class BlockEmpnoAllocator implements EmpnoAllocator
+{
+	// the largest number which fits in EMPNO CHAR(6)
+	private static final long MAX_EMPNO = 999999;
+	
+	@Value("${employee.empno.blockSize:100}")
+	private int blockSize;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	// the block being used for each DataSource, empty until the first number is needed
+	private final AtomicReferenceArray<Block> blocks = new AtomicReferenceArray<>(DataSourceType.values().length);
+	
+	private final Object[] refillLocks = new Object[DataSourceType.values().length];
+	
+	
+	// A range of reserved numbers, from next up to but not including end
+	private static class Block
+	{
+		final AtomicLong next;
+		final long end;
+		
+		Block(long start, long end)
+		{
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+	
+	
+	protected BlockEmpnoAllocator()
+	{
+		for (int i = 0; i < this.refillLocks.length; i++)
+		{
+			this.blocks.set(i, new Block(0, 0));
+			this.refillLocks[i] = new Object();
+		}
+	}
+	
+	
+	@Override
+	public String next(DataSourceType type)
+	{
+		int index = type.ordinal();
+		while (true)
+		{
+			Block block = this.blocks.get(index);
+			long empNo = block.next.getAndIncrement();
+			if (empNo < block.end)
+			{
+				return String.valueOf(empNo);
+			}
+			
+			refill(type, block);
+		}
+	}
+	
+	
+	// Reserve a new block, unless another thread has already replaced the used up one
+	private void refill(DataSourceType type, Block usedUp)
+	{
+		int index = type.ordinal();
+		synchronized (this.refillLocks[index])
+		{
+			if (this.blocks.get(index) != usedUp)
+			{
+				return;
+			}
+			
+			int size = Math.max(1, this.blockSize);
+			long start = reserve(type == DataSourceType.TYPE2 ? this.jdbcTemplateT2 : this.jdbcTemplateT4, size);
+			if (start + size - 1 > MAX_EMPNO)
+			{
+				throw new IllegalStateException("No employee numbers left, the last block reserved started at " + start);
+			}
+			this.blocks.set(index, new Block(start, start + size));
+		}
+	}
+	
+	
+	/**
+	 * Reserve a block of employee numbers in the database
+	 *
+	 * @param jdbcTemplate - the DataSource to use
+	 * @param size - the number of employee numbers to reserve
+	 * @return the first number in the block
+	 */
+	protected abstract long reserve(JdbcTemplate jdbcTemplate, int size);
+}
@@ -0,0 +1,333 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * A bounded executor for each DataSource, used by the asynchronous REST endpoints
+ *
+ * Each executor has as many threads as its DataSource has connections, and a bounded queue.
+ * A request arriving when the queue is full is rejected straight away, so a slow DataSource
+ * can only tie up its own threads, and never the servlet threads or the other DataSource.
+ * 
+ * When virtual threads are enabled (see Application.getVirtualThreadFactory) each request on the 
+ * type 4 DataSource runs on its own virtual thread instead, and a semaphore limits the number 
+ * running JDBC work to the pool size. Waiting requests are cheap, so the queue can be much longer.
+ * The type 2 DataSource always uses platform threads, as only those can be CICS enabled.
+ */
+@Component
+public class DataSourceExecutors
+{
+	@Value("${employee.async.type2.poolSize:50}")
+	private int type2PoolSize;
+	
+	@Value("${employee.async.type4.poolSize:50}")
+	private int type4PoolSize;
+	
+	@Value("${employee.async.queueSize:100}")
+	private int queueSize;
+	
+	@Value("${employee.async.virtualQueueSize:10000}")
+	private int virtualQueueSize;
+	
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	// only present when virtual threads are enabled and supported
+	@Autowired(required = false)
+	@Qualifier("virtualThreadFactory")
+	private ThreadFactory virtualThreadFactory;
+	
+	private final Map<DataSourceType, Bulkhead> bulkheads = new EnumMap<>(DataSourceType.class);
+	
+	
+	// Platform threads come from the managed thread factory, so they can use the type 2 DataSource
+	@PostConstruct
+	void start()
+	{
+		this.bulkheads.put(DataSourceType.TYPE2, new PooledBulkhead(this.type2PoolSize, this.queueSize, this.threadFactory));
+		this.bulkheads.put(DataSourceType.TYPE4, this.virtualThreadFactory != null 
+				? new VirtualBulkhead(this.type4PoolSize, this.virtualQueueSize, this.virtualThreadFactory)
+				: new PooledBulkhead(this.type4PoolSize, this.queueSize, this.threadFactory));
+	}
+	
+	
+	@PreDestroy
+	void stop()
+	{
+		this.bulkheads.values().forEach(Bulkhead::shutdown);
+	}
+	
+	
+	/**
+	 * Run some work on the executor for a DataSource
+	 *
+	 * @param type - the DataSource the work uses
+	 * @param work - the work
+	 * @return the result of the work, when it completes
+	 * @throws RejectedExecutionException if the queue for the DataSource is full
+	 */
+	public <T> CompletableFuture<T> supplyAsync(DataSourceType type, Supplier<T> work)
+	{
+		Bulkhead bulkhead = this.bulkheads.get(type);
+		try
+		{
+			return bulkhead.supplyAsync(work);
+		}
+		catch (RejectedExecutionException e)
+		{
+			bulkhead.rejected.increment();
+			throw new RejectedExecutionException("Too many requests queued for the " + type + " DataSource", e);
+		}
+	}
+	
+	
+	/**
+	 * @return the executor counters for each DataSource
+	 */
+	public Map<DataSourceType, Statistics> getStatistics()
+	{
+		Map<DataSourceType, Statistics> statistics = new EnumMap<>(DataSourceType.class);
+		for (DataSourceType type : DataSourceType.values())
+		{
+			statistics.put(type, this.bulkheads.get(type).getStatistics());
+		}
+		return statistics;
+	}
+	
+	
+	// Limits the work running, and waiting to run, against one DataSource
+	private abstract static class Bulkhead
+	{
+		final LongAdder rejected = new LongAdder();
+		
+		abstract <T> CompletableFuture<T> supplyAsync(Supplier<T> work);
+		
+		abstract Statistics getStatistics();
+		
+		abstract void shutdown();
+	}
+	
+	
+	// A fixed size pool of platform threads, whose idle threads are released, with a bounded queue which rejects when full
+	private static class PooledBulkhead extends Bulkhead
+	{
+		private final ThreadPoolExecutor executor;
+		
+		PooledBulkhead(int poolSize, int queueSize, ThreadFactory threadFactory)
+		{
+			int threads = Math.max(1, poolSize);
+			this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(Math.max(1, queueSize)), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+			this.executor.allowCoreThreadTimeOut(true);
+		}
+		
+		@Override
+		<T> CompletableFuture<T> supplyAsync(Supplier<T> work)
+		{
+			return CompletableFuture.supplyAsync(work, this.executor);
+		}
+		
+		@Override
+		Statistics getStatistics()
+		{
+			return new Statistics(false, this.executor.getMaximumPoolSize(), this.executor.getActiveCount(),
+					this.executor.getQueue().size(), this.executor.getCompletedTaskCount(), this.rejected.sum());
+		}
+		
+		@Override
+		void shutdown()
+		{
+			this.executor.shutdown();
+		}
+	}
+	
+	
+	// A virtual thread for each request, with a semaphore limiting how many run at once
+	private static class VirtualBulkhead extends Bulkhead
+	{
+		private final int poolSize;
+		private final int maxOutstanding;
+		private final ThreadFactory threadFactory;
+		private final Semaphore permits;
+		
+		// requests running or waiting for a permit
+		private final AtomicInteger outstanding = new AtomicInteger();
+		private final LongAdder completed = new LongAdder();
+		
+		VirtualBulkhead(int poolSize, int queueSize, ThreadFactory threadFactory)
+		{
+			this.poolSize = Math.max(1, poolSize);
+			this.maxOutstanding = this.poolSize + Math.max(1, queueSize);
+			this.threadFactory = threadFactory;
+			this.permits = new Semaphore(this.poolSize, true);
+		}
+		
+		@Override
+		<T> CompletableFuture<T> supplyAsync(Supplier<T> work)
+		{
+			if (this.outstanding.incrementAndGet() > this.maxOutstanding)
+			{
+				this.outstanding.decrementAndGet();
+				throw new RejectedExecutionException("Virtual thread queue is full");
+			}
+			
+			CompletableFuture<T> result = new CompletableFuture<>();
+			try
+			{
+				this.threadFactory.newThread(() -> run(work, result)).start();
+			}
+			catch (RuntimeException e)
+			{
+				this.outstanding.decrementAndGet();
+				throw new RejectedExecutionException(e);
+			}
+			return result;
+		}
+		
+		// Wait for a permit, then do the work - waiting parks the virtual thread, not a platform thread
+		private <T> void run(Supplier<T> work, CompletableFuture<T> result)
+		{
+			try
+			{
+				this.permits.acquire();
+				try
+				{
+					result.complete(work.get());
+				}
+				finally
+				{
+					this.permits.release();
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				result.completeExceptionally(e);
+			}
+			catch (Throwable t)
+			{
+				result.completeExceptionally(t);
+			}
+			finally
+			{
+				this.completed.increment();
+				this.outstanding.decrementAndGet();
+			}
+		}
+		
+		@Override
+		Statistics getStatistics()
+		{
+			int running = this.poolSize - this.permits.availablePermits();
+			return new Statistics(true, this.poolSize, running, Math.max(0, this.outstanding.get() - running),
+					this.completed.sum(), this.rejected.sum());
+		}
+		
+		@Override
+		void shutdown()
+		{
+			// virtual threads need no shutdown, running requests are left to complete
+		}
+	}
+	
+	
+	/**
+	 * Executor counters for one DataSource
+	 */
+	public static class Statistics
+	{
+		private final boolean virtualThreads;
+		private final int poolSize;
+		private final int active;
+		private final int queued;
+		private final long completed;
+		private final long rejected;
+		
+		Statistics(boolean virtualThreads, int poolSize, int active, int queued, long completed, long rejected)
+		{
+			this.virtualThreads = virtualThreads;
+			this.poolSize = poolSize;
+			this.active = active;
+			this.queued = queued;
+			this.completed = completed;
+			this.rejected = rejected;
+		}
+		
+		/**
+		 * @return true if requests run on virtual threads
+		 */
+		public boolean isVirtualThreads()
+		{
+			return virtualThreads;
+		}
+		
+		/**
+		 * @return the maximum number of requests running at once
+		 */
+		public int getPoolSize()
+		{
+			return poolSize;
+		}
+		
+		/**
+		 * @return the number of requests running
+		 */
+		public int getActive()
+		{
+			return active;
+		}
+		
+		/**
+		 * @return the number of requests waiting to run
+		 */
+		public int getQueued()
+		{
+			return queued;
+		}
+		
+		/**
+		 * @return the number of requests completed
+		 */
+		public long getCompleted()
+		{
+			return completed;
+		}
+		
+		/**
+		 * @return the number of requests rejected because the queue was full
+		 */
+		public long getRejected()
+		{
+			return rejected;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.ibm.cicsdev.springboot.jdbc.multi.EmployeeMetrics.Operation;
+
+
+/**
+ * Chooses the DataSource for requests using the "auto" jdbcType
+ *
+ * Each DataSource is scored by the number of requests it is running, plus one, multiplied by
+ * its recent latency for the operation being routed (an exponentially weighted moving average 
+ * of the total time of that EmployeeService operation). Each operation keeps its own average, 
+ * so a DataSource running mostly quick lookups does not look faster than one running page 
+ * reads, and lookups answered from EmployeeCache are not counted. The lowest score wins, 
+ * so load moves away from a DataSource that is slow or busy. A DataSource which has not run anything for a while is chosen once
+ * so that its latency is measured again, otherwise one slow request could exclude it for good.
+ *
+ * A DataSource which is still being warmed up (see DataSourceWarmUp) is not chosen, unless neither is ready.
+ */
+@Component
+public class DataSourceRouter
+{
+	// weight given to each new sample is 1 / 2^EWMA_SHIFT
+	private static final int EWMA_SHIFT = 3;
+	
+	@Value("${employee.routing.probeMillis:1000}")
+	private long probeMillis;
+	
+	private final AtomicInteger[] inFlight = new AtomicInteger[DataSourceType.values().length];
+	private final AtomicLong[][] ewmaNanos = new AtomicLong[Operation.values().length][DataSourceType.values().length];
+	private final AtomicLong[] lastSample = new AtomicLong[DataSourceType.values().length];
+	private final LongAdder[] routed = new LongAdder[DataSourceType.values().length];
+	private final AtomicBoolean[] ready = new AtomicBoolean[DataSourceType.values().length];
+	
+	// used to alternate between DataSources with the same score
+	private final AtomicInteger next = new AtomicInteger();
+	
+	
+	public DataSourceRouter()
+	{
+		for (int i = 0; i < this.inFlight.length; i++)
+		{
+			this.inFlight[i] = new AtomicInteger();
+			for (AtomicLong[] operationNanos : this.ewmaNanos)
+			{
+				operationNanos[i] = new AtomicLong();
+			}
+			this.lastSample[i] = new AtomicLong(System.nanoTime());
+			this.routed[i] = new LongAdder();
+			this.ready[i] = new AtomicBoolean(true);
+		}
+	}
+	
+	
+	/**
+	 * @param jdbcType - type2, type4 or auto, from the request URL
+	 * @param operation - the operation the DataSource is needed for
+	 * @return the DataSource to use
+	 */
+	public DataSourceType resolve(String jdbcType, Operation operation)
+	{
+		if (jdbcType.equalsIgnoreCase("auto"))
+		{
+			return choose(operation);
+		}
+		
+		return DataSourceType.of(jdbcType);
+	}
+	
+	
+	/**
+	 * @param operation - the operation the DataSource is needed for
+	 * @return the DataSource a request should use
+	 */
+	public DataSourceType choose(Operation operation)
+	{
+		AtomicLong[] operationNanos = this.ewmaNanos[operation.ordinal()];
+		DataSourceType[] types = DataSourceType.values();
+		long now = System.nanoTime();
+		long probeNanos = TimeUnit.MILLISECONDS.toNanos(this.probeMillis);
+		
+		boolean anyReady = false;
+		for (AtomicBoolean typeReady : this.ready)
+		{
+			anyReady |= typeReady.get();
+		}
+		
+		DataSourceType best = null;
+		long bestScore = Long.MAX_VALUE;
+		int offset = this.next.getAndIncrement() & Integer.MAX_VALUE;
+		for (int i = 0; i < types.length; i++)
+		{
+			DataSourceType type = types[(offset + i) % types.length];
+			int index = type.ordinal();
+			if (anyReady && !this.ready[index].get())
+			{
+				continue;
+			}
+			
+			// re-measure a DataSource which is idle, claiming the probe so only one request is sent
+			long last = this.lastSample[index].get();
+			if (this.inFlight[index].get() == 0 && now - last > probeNanos
+					&& this.lastSample[index].compareAndSet(last, now))
+			{
+				best = type;
+				break;
+			}
+			
+			long score = (this.inFlight[index].get() + 1L) * operationNanos[index].get();
+			if (score < bestScore)
+			{
+				best = type;
+				bestScore = score;
+			}
+		}
+		
+		this.routed[best.ordinal()].increment();
+		return best;
+	}
+	
+	
+	/**
+	 * Called when a DataSource starts and finishes warming up
+	 *
+	 * @param type - the DataSource
+	 * @param ready - false while the DataSource is warming up
+	 */
+	void setReady(DataSourceType type, boolean ready)
+	{
+		this.ready[type.ordinal()].set(ready);
+	}
+	
+	
+	/**
+	 * Called when an operation starts on a DataSource
+	 *
+	 * @param type - the DataSource
+	 */
+	void started(DataSourceType type)
+	{
+		this.inFlight[type.ordinal()].incrementAndGet();
+	}
+	
+	
+	/**
+	 * Called when an operation on a DataSource ends
+	 *
+	 * @param type - the DataSource
+	 */
+	void finished(DataSourceType type)
+	{
+		this.inFlight[type.ordinal()].decrementAndGet();
+	}
+	
+	
+	/**
+	 * Called when an operation on a DataSource ends after using the database
+	 *
+	 * @param type - the DataSource
+	 * @param operation - the operation
+	 * @param nanos - the time the operation took
+	 */
+	void finished(DataSourceType type, Operation operation, long nanos)
+	{
+		int index = type.ordinal();
+		this.inFlight[index].decrementAndGet();
+		this.lastSample[index].set(System.nanoTime());
+		
+		// the first sample is taken as it is, then each sample moves the average part of the way
+		AtomicLong ewma = this.ewmaNanos[operation.ordinal()][index];
+		long current;
+		long updated;
+		do
+		{
+			current = ewma.get();
+			updated = current == 0 ? Math.max(1, nanos) : current + ((nanos - current) >> EWMA_SHIFT);
+		}
+		while (!ewma.compareAndSet(current, updated));
+	}
+	
+	
+	/**
+	 * @return the routing counters for each DataSource
+	 */
+	public Map<DataSourceType, Statistics> getStatistics()
+	{
+		Map<DataSourceType, Statistics> statistics = new EnumMap<>(DataSourceType.class);
+		for (DataSourceType type : DataSourceType.values())
+		{
+			int index = type.ordinal();
+			Map<Operation, Long> latencyMicros = new EnumMap<>(Operation.class);
+			for (Operation operation : Operation.values())
+			{
+				long nanos = this.ewmaNanos[operation.ordinal()][index].get();
+				if (nanos > 0)
+				{
+					latencyMicros.put(operation, TimeUnit.NANOSECONDS.toMicros(nanos));
+				}
+			}
+			statistics.put(type, new Statistics(this.ready[index].get(), this.routed[index].sum(), this.inFlight[index].get(), latencyMicros));
+		}
+		return statistics;
+	}
+	
+	
+	/**
+	 * Routing counters for one DataSource
+	 */
+	public static class Statistics
+	{
+		private final boolean ready;
+		private final long routed;
+		private final int inFlight;
+		private final Map<Operation, Long> latencyMicros;
+		
+		Statistics(boolean ready, long routed, int inFlight, Map<Operation, Long> latencyMicros)
+		{
+			this.ready = ready;
+			this.routed = routed;
+			this.inFlight = inFlight;
+			this.latencyMicros = latencyMicros;
+		}
+		
+		/**
+		 * @return false while the DataSource is warming up
+		 */
+		public boolean isReady()
+		{
+			return ready;
+		}
+		
+		/**
+		 * @return the number of "auto" requests sent to this DataSource
+		 */
+		public long getRouted()
+		{
+			return routed;
+		}
+		
+		/**
+		 * @return the number of operations running on this DataSource, for any jdbcType
+		 */
+		public int getInFlight()
+		{
+			return inFlight;
+		}
+		
+		/**
+		 * @return the moving average latency of each operation measured on this DataSource
+		 */
+		public Map<Operation, Long> getLatencyMicros()
+		{
+			return latencyMicros;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * The two DataSources used by this sample, as named by the jdbcType in the request URL
+ */
+public enum DataSourceType 
+{
+	/** jdbc/t2DataSource - type 2 connectivity (native, DB2CONN) */
+	TYPE2,
+	
+	/** jdbc/t4DataSource - type 4 connectivity (Java based, TCP/IP) */
+	TYPE4;
+	
+	
+	/**
+	 * @param jdbcType - the jdbcType from the request URL
+	 * @return TYPE2 if the jdbcType is "type2", otherwise TYPE4
+	 */
+	public static DataSourceType of(String jdbcType)
+	{
+		if (jdbcType.equalsIgnoreCase("type2"))
+		{
+			return TYPE2;
+		}
+		
+		return TYPE4;
+	}
+	
+	
+	@Override
+	public String toString()
+	{
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,453 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.nio.charset.Charset;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks that the type 2 and type 4 DataSources return the same employees
+ *
+ * Both DataSources are read at the same time, each on its own thread from the managed thread factory,
+ * ordered by EMPNO. Each row is reduced to its employee number and a hash of every column, and handed
+ * to the requesting thread through a small bounded queue, where the two ordered streams are merged.
+ * Memory use does not depend on the size of the table, and the check takes about as long as the slower
+ * of the two reads.
+ *
+ * The merge has to order employee numbers the way Db2 does. By default they are compared as Java strings,
+ * which matches a Unicode table; for an EBCDIC table set employee.verify.collation to its code page, for
+ * example IBM037. Rows that arrive out of that order stop the check with an error rather than giving
+ * a wrong answer.
+ */
+@Component
+public class DataSourceVerifier
+{
+	// Number of rows the driver fetches per network round trip, and the number held in each queue
+	@Value("${employee.verify.fetchSize:500}")
+	private int fetchSize;
+	
+	// Most differences listed in the result, the rest are only counted
+	@Value("${employee.verify.maxReported:100}")
+	private int maxReported;
+	
+	// Code page in which Db2 compares employee numbers, empty for Unicode order
+	@Value("${employee.verify.collation:}")
+	private String collation;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	// CICS enabled threads, so the type 2 DataSource can be used
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	private static final String VERIFY_SQL = "SELECT EMPNO, " + EmployeeFields.ALL.getColumnList() + " FROM emp ORDER BY EMPNO";
+	
+	// The employee number, then every column
+	private static final int COLUMNS = 1 + EmployeeFields.Field.values().length;
+	
+	
+	// One row read by a scan: its employee number, the same as a key in the collation, and a hash of all the columns
+	private static class Row
+	{
+		// marks the end of a scan
+		static final Row END = new Row(null, null, 0);
+		
+		final String empNo;
+		final byte[] key;
+		final long hash;
+		
+		Row(String empNo, byte[] key, long hash)
+		{
+			this.empNo = empNo;
+			this.key = key;
+			this.hash = hash;
+		}
+	}
+	
+	
+	/**
+	 * Compare every employee on the type 2 DataSource with the same employee on the type 4 DataSource
+	 *
+	 * @return the number of employees which match, differ, or are only on one DataSource,
+	 * and the employee numbers of the first employee.verify.maxReported of those that don't match
+	 */
+	public Result verify()
+	{
+		long start = System.nanoTime();
+		Charset charset = this.collation.isEmpty() ? null : Charset.forName(this.collation);
+		
+		Scan type2 = new Scan(DataSourceType.TYPE2, this.jdbcTemplateT2, charset);
+		Scan type4 = new Scan(DataSourceType.TYPE4, this.jdbcTemplateT4, charset);
+		this.threadFactory.newThread(type2).start();
+		this.threadFactory.newThread(type4).start();
+		
+		long matched = 0, different = 0, onlyType2 = 0, onlyType4 = 0;
+		List<String> mismatches = new ArrayList<>();
+		try
+		{
+			Row a = type2.next();
+			Row b = type4.next();
+			while (a != Row.END || b != Row.END)
+			{
+				int c = a == Row.END ? 1 : b == Row.END ? -1 : compare(a, b);
+				if (c == 0)
+				{
+					if (a.hash == b.hash)
+					{
+						matched++;
+					}
+					else
+					{
+						different++;
+						report(mismatches, a.empNo + " differs");
+					}
+					a = type2.next();
+					b = type4.next();
+				}
+				else if (c < 0)
+				{
+					onlyType2++;
+					report(mismatches, a.empNo + " is only on type2");
+					a = type2.next();
+				}
+				else
+				{
+					onlyType4++;
+					report(mismatches, b.empNo + " is only on type4");
+					b = type4.next();
+				}
+			}
+		}
+		finally
+		{
+			// stops a scan which is still running if the merge failed
+			type2.cancel();
+			type4.cancel();
+		}
+		
+		return new Result(type2.rows, type4.rows, matched, different, onlyType2, onlyType4, mismatches,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+	
+	
+	// Add a difference to the list, until it is full
+	private void report(List<String> mismatches, String mismatch)
+	{
+		if (mismatches.size() < this.maxReported)
+		{
+			mismatches.add(mismatch);
+		}
+	}
+	
+	
+	// Order two rows by employee number in the collation
+	private static int compare(Row a, Row b)
+	{
+		if (a.key == null)
+		{
+			return a.empNo.compareTo(b.empNo);
+		}
+		
+		int length = Math.min(a.key.length, b.key.length);
+		for (int i = 0; i < length; i++)
+		{
+			int c = (a.key[i] & 0xff) - (b.key[i] & 0xff);
+			if (c != 0)
+			{
+				return c;
+			}
+		}
+		return a.key.length - b.key.length;
+	}
+	
+	
+	// 64 bit FNV-1a hash of every column after the employee number, which keeps nulls apart from empty strings
+	private static long hash(ResultSet rs) throws SQLException
+	{
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 2; i <= COLUMNS; i++)
+		{
+			String value = rs.getString(i);
+			if (value == null)
+			{
+				hash = (hash ^ 0xffff) * 0x100000001b3L;
+			}
+			else
+			{
+				for (int j = 0; j < value.length(); j++)
+				{
+					hash = (hash ^ value.charAt(j)) * 0x100000001b3L;
+				}
+			}
+			
+			// a separator, so moving characters between columns changes the hash
+			hash = (hash ^ 0xfffe) * 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	
+	// Reads one DataSource in EMPNO order, on its own thread, into a bounded queue read by the merge
+	private class Scan implements Runnable
+	{
+		private final DataSourceType type;
+		private final JdbcTemplate jdbcTemplate;
+		private final Charset charset;
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(Math.max(1, fetchSize));
+		
+		private volatile boolean cancelled;
+		private long rows;
+		private Row previous;
+		
+		Scan(DataSourceType type, JdbcTemplate jdbcTemplate, Charset charset)
+		{
+			this.type = type;
+			this.jdbcTemplate = jdbcTemplate;
+			this.charset = charset;
+		}
+		
+		@Override
+		public void run()
+		{
+			// use a forward-only cursor with an explicit fetch size so the driver only
+			// buffers one block of rows at a time
+			PreparedStatementCreator psc = con ->
+			{
+				PreparedStatement ps = con.prepareStatement(VERIFY_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				ps.setFetchSize(fetchSize);
+				return ps;
+			};
+			
+			try
+			{
+				this.jdbcTemplate.query(
+						psc,
+						(RowCallbackHandler) rs ->
+						{
+							String empNo = rs.getString(1).trim();
+							put(new Row(empNo, this.charset == null ? null : empNo.getBytes(this.charset), hash(rs)));
+						});
+				put(Row.END);
+			}
+			catch (CancelledException e)
+			{
+				// the merge has stopped, nobody is waiting for the rest
+			}
+			catch (RuntimeException | Error e)
+			{
+				try
+				{
+					put(e);
+				}
+				catch (CancelledException ignored)
+				{
+					// the merge has stopped
+				}
+			}
+		}
+		
+		// Wait for room in the queue, giving up if the merge has stopped
+		private void put(Object item)
+		{
+			try
+			{
+				while (!this.queue.offer(item, 100, TimeUnit.MILLISECONDS))
+				{
+					if (this.cancelled)
+					{
+						throw new CancelledException();
+					}
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CancelledException();
+			}
+		}
+		
+		// The next row in EMPNO order, or END
+		Row next()
+		{
+			Object item;
+			try
+			{
+				item = this.queue.take();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted verifying the DataSources");
+			}
+			
+			if (item instanceof RuntimeException)
+			{
+				throw (RuntimeException) item;
+			}
+			if (item instanceof Error)
+			{
+				throw (Error) item;
+			}
+			
+			Row row = (Row) item;
+			if (row != Row.END)
+			{
+				if (this.previous != null && compare(this.previous, row) >= 0)
+				{
+					throw new IllegalStateException("The " + this.type + " DataSource returned " + row.empNo + " after " + this.previous.empNo
+							+ ", which is not the order expected, set employee.verify.collation to the code page of the EMP table");
+				}
+				this.previous = row;
+				this.rows++;
+			}
+			return row;
+		}
+		
+		void cancel()
+		{
+			this.cancelled = true;
+		}
+	}
+	
+	
+	// Thrown on a scan thread to abandon its query once the merge has stopped
+	private static class CancelledException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+		
+		CancelledException()
+		{
+			super(null, null, false, false);
+		}
+	}
+	
+	
+	/**
+	 * The outcome of comparing the two DataSources
+	 */
+	public static class Result
+	{
+		private final long type2Rows;
+		private final long type4Rows;
+		private final long matched;
+		private final long different;
+		private final long onlyType2;
+		private final long onlyType4;
+		private final List<String> mismatches;
+		private final long millis;
+		
+		Result(long type2Rows, long type4Rows, long matched, long different, long onlyType2, long onlyType4, List<String> mismatches, long millis)
+		{
+			this.type2Rows = type2Rows;
+			this.type4Rows = type4Rows;
+			this.matched = matched;
+			this.different = different;
+			this.onlyType2 = onlyType2;
+			this.onlyType4 = onlyType4;
+			this.mismatches = mismatches;
+			this.millis = millis;
+		}
+		
+		/**
+		 * @return true if every employee is the same on both DataSources
+		 */
+		public boolean isConsistent()
+		{
+			return different == 0 && onlyType2 == 0 && onlyType4 == 0;
+		}
+		
+		/**
+		 * @return the number of rows read from the type 2 DataSource
+		 */
+		public long getType2Rows()
+		{
+			return type2Rows;
+		}
+		
+		/**
+		 * @return the number of rows read from the type 4 DataSource
+		 */
+		public long getType4Rows()
+		{
+			return type4Rows;
+		}
+		
+		/**
+		 * @return the number of employees which are the same on both DataSources
+		 */
+		public long getMatched()
+		{
+			return matched;
+		}
+		
+		/**
+		 * @return the number of employees on both DataSources with different values
+		 */
+		public long getDifferent()
+		{
+			return different;
+		}
+		
+		/**
+		 * @return the number of employees only on the type 2 DataSource
+		 */
+		public long getOnlyType2()
+		{
+			return onlyType2;
+		}
+		
+		/**
+		 * @return the number of employees only on the type 4 DataSource
+		 */
+		public long getOnlyType4()
+		{
+			return onlyType4;
+		}
+		
+		/**
+		 * @return the first employees which don't match, and how
+		 */
+		public List<String> getMismatches()
+		{
+			return mismatches;
+		}
+		
+		/**
+		 * @return the time the check took
+		 */
+		public long getMillis()
+		{
+			return millis;
+		}
+	}
+}
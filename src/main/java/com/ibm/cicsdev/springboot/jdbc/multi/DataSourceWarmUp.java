@@ -0,0 +1,333 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Warms up both DataSources when the application starts, so the first requests don't pay for it
+ *
+ * For each DataSource, on its own thread from the managed thread factory:
+ *    opens employee.warmup.connections connections together, so the pool holds at least that many,
+ *    prepares each EmployeeService statement on every one of them, filling the statement cache,
+ *    then runs employee.warmup.iterations page reads and single employee lookups through EmployeeService,
+ *    serializing each result, so the code on the request path has been compiled by the JIT.
+ *
+ * Application starts the warm-up and waits up to employee.warmup.timeoutSeconds for it, so the
+ * application is not ready for requests until it has finished. If it takes longer the application
+ * starts anyway, and the "auto" jdbcType avoids a DataSource until its warm-up has finished.
+ * Only reads are run, and a failure is logged and leaves the DataSource in use as normal.
+ */
+@Component
+public class DataSourceWarmUp
+{
+	private static final Logger LOG = LoggerFactory.getLogger(DataSourceWarmUp.class);
+	
+	@Value("${employee.warmup.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.warmup.connections:5}")
+	private int connections;
+	
+	@Value("${employee.warmup.iterations:200}")
+	private int iterations;
+	
+	@Value("${employee.warmup.timeoutSeconds:60}")
+	private long timeoutSeconds;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	@Autowired
+	private EmployeeService employeeService;
+	
+	@Autowired
+	private DataSourceRouter router;
+	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	// CICS enabled threads, so the type 2 DataSource can be used
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	private final Map<DataSourceType, Progress> progress = new EnumMap<>(DataSourceType.class);
+	
+	
+	// How far the warm-up of one DataSource has got, written by its warm-up thread
+	private static class Progress
+	{
+		volatile boolean finished;
+		volatile long millis;
+		volatile int connections;
+		volatile int statements;
+		volatile int requests;
+		volatile String error;
+	}
+	
+	
+	public DataSourceWarmUp()
+	{
+		for (DataSourceType type : DataSourceType.values())
+		{
+			this.progress.put(type, new Progress());
+		}
+	}
+	
+	
+	/**
+	 * Warm up both DataSources, in parallel, waiting up to employee.warmup.timeoutSeconds for them to finish
+	 */
+	public void run()
+	{
+		if (!this.enabled)
+		{
+			return;
+		}
+		
+		long start = System.nanoTime();
+		List<CompletableFuture<Void>> warming = new ArrayList<>();
+		for (DataSourceType type : DataSourceType.values())
+		{
+			this.router.setReady(type, false);
+			
+			CompletableFuture<Void> done = new CompletableFuture<>();
+			this.threadFactory.newThread(() ->
+			{
+				warmUp(type);
+				done.complete(null);
+			}).start();
+			warming.add(done);
+		}
+		
+		try
+		{
+			CompletableFuture.allOf(warming.toArray(new CompletableFuture<?>[0])).get(this.timeoutSeconds, TimeUnit.SECONDS);
+			LOG.info("DataSource warm-up finished in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+		catch (TimeoutException e)
+		{
+			LOG.warn("DataSource warm-up has not finished after {} seconds, the application is starting anyway", this.timeoutSeconds);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException e)
+		{
+			// not thrown, warmUp handles its own failures
+		}
+	}
+	
+	
+	// Warm up one DataSource, then let the router use it whatever the outcome
+	private void warmUp(DataSourceType type)
+	{
+		Progress progress = this.progress.get(type);
+		long start = System.nanoTime();
+		try
+		{
+			JdbcTemplate jdbcTemplate = type == DataSourceType.TYPE2 ? this.jdbcTemplateT2 : this.jdbcTemplateT4;
+			prepare(jdbcTemplate.getDataSource(), progress);
+			run(type, progress);
+			
+			LOG.info("Warmed up the {} DataSource in {} ms: {} connections, {} statements prepared on each, {} requests",
+					type, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), progress.connections, progress.statements, progress.requests);
+		}
+		catch (Exception e)
+		{
+			progress.error = e.toString();
+			LOG.warn("Warm-up of the {} DataSource failed after {} ms", type, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e);
+		}
+		finally
+		{
+			progress.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			progress.finished = true;
+			this.router.setReady(type, true);
+		}
+	}
+	
+	
+	// Open the connections together, and prepare every statement on each of them
+	private void prepare(DataSource dataSource, Progress progress) throws SQLException
+	{
+		List<String> statements = this.employeeService.statements();
+		List<Connection> opened = new ArrayList<>();
+		try
+		{
+			for (int i = 0; i < this.connections; i++)
+			{
+				Connection con = dataSource.getConnection();
+				opened.add(con);
+				progress.connections = opened.size();
+				
+				// closing a prepared statement returns it to the connection's statement cache
+				for (String sql : statements)
+				{
+					con.prepareStatement(sql).close();
+				}
+				progress.statements = statements.size();
+			}
+		}
+		finally
+		{
+			for (Connection con : opened)
+			{
+				con.close();
+			}
+		}
+	}
+	
+	
+	// Page through the table, looking up one employee from each page, as requests would
+	private void run(DataSourceType type, Progress progress) throws Exception
+	{
+		String cursor = null;
+		for (int i = 0; i < this.iterations; i++)
+		{
+			EmployeePage page = this.employeeService.selectPage(type.toString(), cursor, 10, EmployeeFields.ALL);
+			this.objectMapper.writeValueAsBytes(page);
+			cursor = page.getNextCursor();
+			
+			List<Employee> employees = page.getEmployees();
+			if (!employees.isEmpty())
+			{
+				String empNo = employees.get(i % employees.size()).getEmpNo();
+				this.objectMapper.writeValueAsBytes(this.employeeService.selectWhereEmpno(type.toString(), empNo, EmployeeFields.ALL));
+			}
+			progress.requests = i + 1;
+		}
+	}
+	
+	
+	/**
+	 * @return the progress of the warm-up of each DataSource
+	 */
+	public Map<DataSourceType, Statistics> getStatistics()
+	{
+		Map<DataSourceType, Statistics> statistics = new EnumMap<>(DataSourceType.class);
+		for (DataSourceType type : DataSourceType.values())
+		{
+			Progress p = this.progress.get(type);
+			statistics.put(type, new Statistics(this.enabled, p.finished, p.millis, p.connections, p.statements, p.requests, p.error));
+		}
+		return statistics;
+	}
+	
+	
+	/**
+	 * Warm-up progress for one DataSource
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final boolean finished;
+		private final long millis;
+		private final int connections;
+		private final int statements;
+		private final int requests;
+		private final String error;
+		
+		Statistics(boolean enabled, boolean finished, long millis, int connections, int statements, int requests, String error)
+		{
+			this.enabled = enabled;
+			this.finished = finished;
+			this.millis = millis;
+			this.connections = connections;
+			this.statements = statements;
+			this.requests = requests;
+			this.error = error;
+		}
+		
+		/**
+		 * @return true if warm-up is enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+		
+		/**
+		 * @return true once the warm-up has finished, or failed
+		 */
+		public boolean isFinished()
+		{
+			return finished;
+		}
+		
+		/**
+		 * @return the time the warm-up took
+		 */
+		public long getMillis()
+		{
+			return millis;
+		}
+		
+		/**
+		 * @return the number of connections opened
+		 */
+		public int getConnections()
+		{
+			return connections;
+		}
+		
+		/**
+		 * @return the number of statements prepared on each connection
+		 */
+		public int getStatements()
+		{
+			return statements;
+		}
+		
+		/**
+		 * @return the number of synthetic requests run
+		 */
+		public int getRequests()
+		{
+			return requests;
+		}
+		
+		/**
+		 * @return the reason the warm-up failed, or null
+		 */
+		public String getError()
+		{
+			return error;
+		}
+	}
+}
@@ -11,11 +11,22 @@
 package com.ibm.cicsdev.springboot.jdbc.multi;
 
 import java.sql.Date;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 
 /**
  * class representing the EMP table
+ * 
+ * The JSON filter allows a caller to ask for only some of the properties, see EmployeeFields
+ * 
+ * Large result sets are held in memory (see EmployeeCache), so an employee is kept compact.
+ * The columns with few distinct values share one String instance for each value, and the dates
+ * are held as a number of days since 1970-01-01. The properties are unchanged, so an employee
+ * is serialized exactly as before.
  */
+@JsonFilter(EmployeeFields.FILTER_ID)
 public class Employee 
 {
 
@@ -58,22 +69,39 @@ public class Employee
 	 */
 
 
+	// the value of a date column which is null
+	static final int NO_DATE = Integer.MIN_VALUE;
+
+	// shared instances for WORKDEPT, JOB, SEX and MIDINIT values
+	private static final StringDictionary CODES = new StringDictionary(4096);
+
+	// the fields keep the names of their properties, as Jackson orders the properties by field
 	private String empNo;
 	private String firstNme;
 	private String midinit;
 	private String lastName;
 	private String workdept;
 	private String phoneNo;
-	private Date hireDate;
+	private int hireDate = NO_DATE;
 	private String job;
 	private int edLevel;
 	private String sex;
-	private String birthDate;
+	private int birthDate = NO_DATE;
+	private String birthDateText; // only used for a birth date which isn't yyyy-MM-dd
 	private long salary;
 	private long bonus;
 	private long comm;
 
 
+	/**
+	 * Create an empty employee, used when reading an employee from a JSON request body
+	 */
+	public Employee()
+	{
+		super();
+	}
+
+
 	/**
 	 * @param empNo		- employee Number 			- 6 characters
 	 * @param firstNme 	- employee first name 		- 12 characters
@@ -96,15 +124,15 @@ public class Employee
 		super();
 		this.empNo = empNo;
 		this.firstNme = firstNme;
-		this.midinit = midinit;
+		this.midinit = CODES.canonical(midinit);
 		this.lastName = lastName;
-		this.workdept = workdept;
+		this.workdept = CODES.canonical(workdept);
 		this.phoneNo = phoneNo;
-		this.hireDate = hireDate;
-		this.job = job;
+		this.hireDate = toEpochDay(hireDate);
+		this.job = CODES.canonical(job);
 		this.edLevel = edLevel;
-		this.sex = sex;
-		this.birthDate = birthDate;
+		this.sex = CODES.canonical(sex);
+		setBirthDate(birthDate);
 		this.salary = salary;
 		this.bonus = bonus;
 		this.comm = comm;
@@ -119,11 +147,11 @@ public class Employee
 				", lastName=" + lastName + 
 				", workdept=" + workdept + 
 				", phoneNo=" + phoneNo + 
-				", hireDate=" + hireDate + 
+				", hireDate=" + getHireDate() + 
 				", job=" + job + 
 				", edLevel=" + edLevel + 
 				", sex=" + sex + 
-				", birthDate=" + birthDate + 
+				", birthDate=" + getBirthDate() + 
 				", salary=" + salary + 
 				", bonus=" + bonus + 
 				", comm=" + comm + "]";
@@ -174,7 +202,7 @@ public class Employee
 	 */
 	public void setMidinit(String midinit)
 	{
-		this.midinit = midinit;
+		this.midinit = CODES.canonical(midinit);
 	}
 
 	/**
@@ -206,7 +234,7 @@ public class Employee
 	 */
 	public void setWorkdept(String workdept)
 	{
-		this.workdept = workdept;
+		this.workdept = CODES.canonical(workdept);
 	}
 
 	/**
@@ -230,7 +258,7 @@ public class Employee
 	 */
 	public Date getHireDate()
 	{
-		return hireDate;
+		return hireDate == NO_DATE ? null : Date.valueOf(LocalDate.ofEpochDay(hireDate));
 	}
 
 	/**
@@ -238,7 +266,15 @@ public class Employee
 	 */
 	public void setHireDate(Date hireDate)
 	{
-		this.hireDate = hireDate;
+		this.hireDate = toEpochDay(hireDate);
+	}
+
+	/**
+	 * @return employee hire date as days since 1970-01-01, or NO_DATE
+	 */
+	int getHireEpochDay()
+	{
+		return hireDate;
 	}
 
 	/**
@@ -254,7 +290,7 @@ public class Employee
 	 */
 	public void setJob(String job)
 	{
-		this.job = job;
+		this.job = CODES.canonical(job);
 	}
 
 	/**
@@ -286,7 +322,7 @@ public class Employee
 	 */
 	public void setSex(String sex)
 	{
-		this.sex = sex;
+		this.sex = CODES.canonical(sex);
 	}
 
 	/**
@@ -294,7 +330,7 @@ public class Employee
 	 */
 	public String getBirthDate()
 	{
-		return birthDate;
+		return birthDate == NO_DATE ? birthDateText : LocalDate.ofEpochDay(birthDate).toString();
 	}
 
 	/**
@@ -302,7 +338,8 @@ public class Employee
 	 */
 	public void setBirthDate(String birthDate)
 	{
-		this.birthDate = birthDate;
+		this.birthDate = parseEpochDay(birthDate);
+		this.birthDateText = this.birthDate == NO_DATE ? birthDate : null;
 	}
 
 	/**
@@ -352,4 +389,58 @@ public class Employee
 	{
 		this.comm = comm;
 	}
+
+	/**
+	 * @param date - a date, or null
+	 * @return the date as days since 1970-01-01, or NO_DATE if it is null
+	 */
+	static int toEpochDay(Date date)
+	{
+		return date == null ? NO_DATE : (int) date.toLocalDate().toEpochDay();
+	}
+
+	/**
+	 * @param text - a date as yyyy-MM-dd
+	 * @return the date as days since 1970-01-01, or NO_DATE if text is null or not a yyyy-MM-dd date
+	 */
+	static int parseEpochDay(String text)
+	{
+		if (text == null || text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-')
+		{
+			return NO_DATE;
+		}
+
+		int year = digits(text, 0, 4);
+		int month = digits(text, 5, 7);
+		int day = digits(text, 8, 10);
+		if (year < 0 || month < 0 || day < 0)
+		{
+			return NO_DATE;
+		}
+
+		try
+		{
+			return (int) LocalDate.of(year, month, day).toEpochDay();
+		}
+		catch (DateTimeException e)
+		{
+			return NO_DATE;
+		}
+	}
+
+	// The decimal number in text from start to end, or -1 if there is anything but digits
+	private static int digits(String text, int start, int end)
+	{
+		int value = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = text.charAt(i);
+			if (c < '0' || c > '9')
+			{
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
 }
@@ -0,0 +1,164 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.ibm.cicsdev.springboot.jdbc.multi.EmployeeMetrics.Operation;
+
+
+/**
+ *
+ * Asynchronous Employee REST controller
+ *
+ * The same requests as EmployeeRestController, prefixed with /async. The servlet thread is released
+ * as soon as the request has been handed to the executor for its DataSource (see DataSourceExecutors),
+ * and the response is written when the EmployeeService call completes. If the executor's queue is
+ * full the request fails straight away with HTTP 503.
+ *
+ * The global (XA) transaction requests are not offered, as the transaction would have to span threads.
+ */
+@RestController
+@RequestMapping("/async")
+public class EmployeeAsyncRestController
+{
+	@Autowired
+	private EmployeeService employeeService;
+	
+	@Autowired
+	private DataSourceExecutors executors;
+	
+	@Autowired
+	private DataSourceRouter router;
+	
+	
+	/**
+	 * Show all Employees
+	 *
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @return a list of employees
+	 */
+	@GetMapping({"/{jdbcType}/allEmployees","/{jdbcType}/allEmployees/"})
+	public CompletableFuture<MappingJacksonValue> getAllEmployees(@PathVariable String jdbcType, @RequestParam(required = false) String fields)
+	{
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		DataSourceType type = this.router.resolve(jdbcType, Operation.SELECT_ALL);
+		return this.executors.supplyAsync(type, () -> project(this.employeeService.selectAll(type.toString(), projection), projection));
+	}
+	
+	
+	/**
+	 * List one Employee
+	 *
+	 * @param empno - employee number
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @return a list of employee records for the passed parameter number
+	 */
+	@GetMapping("/{jdbcType}/listEmployee/{empno}")
+	public CompletableFuture<MappingJacksonValue> listEmployee(@PathVariable String jdbcType, @PathVariable String empno,
+			@RequestParam(required = false) String fields)
+	{
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		DataSourceType type = this.router.resolve(jdbcType, Operation.SELECT_WHERE_EMPNO);
+		return this.executors.supplyAsync(type, () -> project(this.employeeService.selectWhereEmpno(type.toString(), empno, projection), projection));
+	}
+	
+	
+	// Wrap a result so that only the properties in the projection are serialized
+	private MappingJacksonValue project(Object value, EmployeeFields projection)
+	{
+		MappingJacksonValue result = new MappingJacksonValue(value);
+		result.setFilters(projection.getFilters());
+		return result;
+	}
+	
+	
+	/**
+	 * Add an Employee
+	 *
+	 * @param firstName - employee first name
+	 * @param lastName - employee last name
+	 * @return a message indicating success or failure of the add operation
+	 */
+	@GetMapping("/{jdbcType}/addEmployee/{firstName}/{lastName}")
+	public CompletableFuture<String> addEmp(@PathVariable String jdbcType, @PathVariable String firstName , @PathVariable String lastName)
+	{
+		DataSourceType type = this.router.resolve(jdbcType, Operation.ADD);
+		return this.executors.supplyAsync(type, () -> this.employeeService.addEmployee(type.toString(), firstName, lastName));
+	}
+	
+	
+	/**
+	 * Delete an Employee
+	 *
+	 * @param empNo - employee number to be deleted
+	 * @return a message indicating success or failure of the delete operation
+	 */
+	@GetMapping("/{jdbcType}/deleteEmployee/{empNo}")
+	public CompletableFuture<String> delEmployee(@PathVariable String jdbcType, @PathVariable String empNo)
+	{
+		DataSourceType type = this.router.resolve(jdbcType, Operation.DELETE);
+		return this.executors.supplyAsync(type, () -> this.employeeService.deleteEmployee(type.toString(), empNo));
+	}
+	
+	
+	/**
+	 * Update the salary of an Employee
+	 *
+	 * @param empNo - employee number to be updated
+	 * @param newSalary - the new salary to be given to the employee
+	 * @return a message indicating success or failure of the update operation
+	 */
+	@GetMapping("/{jdbcType}/updateEmployee/{empNo}/{newSalary}")
+	public CompletableFuture<String> updateEmp(@PathVariable String jdbcType, @PathVariable String empNo, @PathVariable int newSalary)
+	{
+		DataSourceType type = this.router.resolve(jdbcType, Operation.UPDATE_SALARY);
+		return this.executors.supplyAsync(type, () -> this.employeeService.updateEmployee(type.toString(), newSalary, empNo));
+	}
+	
+	
+	/**
+	 * Report a bad request parameter, such as an unknown field name, as HTTP 400
+	 *
+	 * @param e - the exception thrown by the handler
+	 * @return the exception message
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> badRequest(IllegalArgumentException e)
+	{
+		return ResponseEntity.badRequest().body(e.getMessage());
+	}
+	
+	
+	/**
+	 * Report a request rejected because its DataSource is too busy as HTTP 503
+	 *
+	 * @param e - the exception thrown by the executor
+	 * @return the exception message
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<String> tooBusy(RejectedExecutionException e)
+	{
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+	}
+}
@@ -0,0 +1,70 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * class representing the outcome of one row of a batch insert
+ */
+public class EmployeeBatchResult 
+{
+	private int index;
+	private String empNo;
+	private boolean added;
+	private String message;
+
+
+	/**
+	 * @param index		- position of the row in the request, starting at 0
+	 * @param empNo		- employee number of the row
+	 * @param added		- true if the row was inserted and committed
+	 * @param message	- a message describing the outcome
+	 */
+	public EmployeeBatchResult(int index, String empNo, boolean added, String message) 
+	{
+		this.index = index;
+		this.empNo = empNo;
+		this.added = added;
+		this.message = message;
+	}
+
+	/**
+	 * @return position of the row in the request
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return employee number of the row
+	 */
+	public String getEmpNo()
+	{
+		return empNo;
+	}
+
+	/**
+	 * @return true if the row was inserted and committed
+	 */
+	public boolean isAdded()
+	{
+		return added;
+	}
+
+	/**
+	 * @return a message describing the outcome
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+}
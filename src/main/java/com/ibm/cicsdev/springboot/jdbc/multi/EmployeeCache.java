@@ -0,0 +1,271 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounded, read-through cache of single employee lookups, keyed by DataSource and employee number
+ * 
+ * Entries are evicted least recently used first once the cache is full, and expire after a fixed time
+ * so that changes made outside this application are picked up. Changes made by EmployeeService 
+ * invalidate the entry for that employee on both DataSources as soon as they are committed.
+ * 
+ * The cache is bypassed inside a transaction, so uncommitted (and possibly rolled back) data is never cached.
+ */
+@Component
+public class EmployeeCache implements EmployeeWriteListener
+{
+	@Value("${employee.cache.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.cache.maxSize:1000}")
+	private int maxSize;
+	
+	@Value("${employee.cache.ttlSeconds:30}")
+	private long ttlSeconds;
+	
+	// LRU map - access order, guarded by its own monitor
+	private final Map<String, CachedEmployees> entries = new LinkedHashMap<String, CachedEmployees>(16, 0.75f, true) 
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedEmployees> eldest) 
+		{
+			if (size() > maxSize)
+			{
+				evictions.increment();
+				return true;
+			}
+			return false;
+		}
+	};
+	
+	// advanced on every invalidation, so a lookup that raced with a write doesn't cache what it read
+	private final AtomicLong generation = new AtomicLong();
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	
+	// A cached result and the time it expires
+	private static class CachedEmployees
+	{
+		final List<Employee> employees;
+		final long expires;
+		
+		CachedEmployees(List<Employee> employees, long expires)
+		{
+			this.employees = employees;
+			this.expires = expires;
+		}
+	}
+	
+	
+	/**
+	 * Return the cached employee records, or load and cache them
+	 * 
+	 * @param type - the DataSource the records are read from
+	 * @param empNo - the employee number
+	 * @param loader - reads the records from the database on a cache miss
+	 * @return the employee records for empNo
+	 */
+	public List<Employee> get(DataSourceType type, String empNo, Supplier<List<Employee>> loader)
+	{
+		if (!this.enabled || TransactionSynchronizationManager.isActualTransactionActive())
+		{
+			return loader.get();
+		}
+		
+		String key = key(type, empNo);
+		long now = System.nanoTime();
+		
+		synchronized (this.entries)
+		{
+			CachedEmployees entry = this.entries.get(key);
+			if (entry != null)
+			{
+				if (now - entry.expires < 0)
+				{
+					this.hits.increment();
+					return entry.employees;
+				}
+				
+				this.entries.remove(key);
+				this.evictions.increment();
+			}
+		}
+		
+		this.misses.increment();
+		long startGeneration = this.generation.get();
+		List<Employee> employees = Collections.unmodifiableList(loader.get());
+		
+		synchronized (this.entries)
+		{
+			// only cache the result if nothing has been invalidated while it was being read
+			if (this.generation.get() == startGeneration)
+			{
+				this.entries.put(key, new CachedEmployees(employees, now + TimeUnit.SECONDS.toNanos(this.ttlSeconds)));
+			}
+		}
+		
+		return employees;
+	}
+	
+	
+	/**
+	 * Stop the lookups in progress from caching what they read, as when an employee is invalidated
+	 * 
+	 * Used when a lookup is answered by the other DataSource, so an entry always holds rows read
+	 * from the DataSource it is cached for.
+	 */
+	public void doNotCache()
+	{
+		this.generation.incrementAndGet();
+	}
+	
+	
+	/**
+	 * Remove an employee from the cache, for both DataSources
+	 * 
+	 * @param empNo - the employee number
+	 */
+	public void invalidate(String empNo)
+	{
+		synchronized (this.entries)
+		{
+			this.generation.incrementAndGet();
+			for (DataSourceType type : DataSourceType.values())
+			{
+				this.entries.remove(key(type, empNo));
+			}
+		}
+	}
+	
+	
+	@Override
+	public void employeeAdded(DataSourceType type, Employee employee) 
+	{
+		// an earlier lookup may have cached the employee as not found
+		invalidate(employee.getEmpNo());
+	}
+
+	
+	@Override
+	public void employeeDeleted(DataSourceType type, String empNo) 
+	{
+		invalidate(empNo);
+	}
+
+	
+	@Override
+	public void salaryUpdated(DataSourceType type, String empNo, long salary) 
+	{
+		invalidate(empNo);
+	}
+	
+	
+	/**
+	 * @return the current hit, miss and eviction counts
+	 */
+	public Statistics getStatistics()
+	{
+		int size;
+		synchronized (this.entries)
+		{
+			size = this.entries.size();
+		}
+		
+		return new Statistics(this.enabled, size, this.hits.sum(), this.misses.sum(), this.evictions.sum());
+	}
+	
+	
+	// Cache key - the same employee number can be cached separately for each DataSource
+	private static String key(DataSourceType type, String empNo)
+	{
+		return type.name() + ':' + empNo;
+	}
+	
+	
+	/**
+	 * Snapshot of the cache counters
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final int size;
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		
+		Statistics(boolean enabled, int size, long hits, long misses, long evictions)
+		{
+			this.enabled = enabled;
+			this.size = size;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+		}
+
+		/**
+		 * @return true if the cache is enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+
+		/**
+		 * @return the number of entries in the cache
+		 */
+		public int getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * @return the number of lookups answered from the cache
+		 */
+		public long getHits()
+		{
+			return hits;
+		}
+
+		/**
+		 * @return the number of lookups which went to the database
+		 */
+		public long getMisses()
+		{
+			return misses;
+		}
+
+		/**
+		 * @return the number of entries removed because the cache was full or they had expired
+		 */
+		public long getEvictions()
+		{
+			return evictions;
+		}
+	}
+}
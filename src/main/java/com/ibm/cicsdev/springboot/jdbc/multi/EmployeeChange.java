@@ -0,0 +1,101 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * class representing one committed change to the EMP table, as sent by the change feed
+ */
+public class EmployeeChange
+{
+	/** the name of the event sent for an insert */
+	public static final String ADDED = "added";
+
+	/** the name of the event sent for a delete */
+	public static final String DELETED = "deleted";
+
+	/** the name of the event sent for a salary update */
+	public static final String SALARY_UPDATED = "salaryUpdated";
+
+	private long sequence;
+	private String change;
+	private String empNo;
+	private Employee employee;
+	private Long salary;
+	private long time;
+
+
+	/**
+	 * @param sequence	- position of the change in the feed of its DataSource
+	 * @param change	- added, deleted or salaryUpdated
+	 * @param empNo		- employee number
+	 * @param employee	- the employee inserted, or null
+	 * @param salary	- the new salary, or null
+	 * @param time		- time the change was published, in milliseconds since the epoch
+	 */
+	public EmployeeChange(long sequence, String change, String empNo, Employee employee, Long salary, long time)
+	{
+		this.sequence = sequence;
+		this.change = change;
+		this.empNo = empNo;
+		this.employee = employee;
+		this.salary = salary;
+		this.time = time;
+	}
+
+	/**
+	 * @return position of the change in the feed of its DataSource
+	 */
+	public long getSequence()
+	{
+		return sequence;
+	}
+
+	/**
+	 * @return added, deleted or salaryUpdated
+	 */
+	public String getChange()
+	{
+		return change;
+	}
+
+	/**
+	 * @return employee number
+	 */
+	public String getEmpNo()
+	{
+		return empNo;
+	}
+
+	/**
+	 * @return the employee inserted, or null if this is not an insert
+	 */
+	public Employee getEmployee()
+	{
+		return employee;
+	}
+
+	/**
+	 * @return the new salary, or null if this is not a salary update
+	 */
+	public Long getSalary()
+	{
+		return salary;
+	}
+
+	/**
+	 * @return time the change was published, in milliseconds since the epoch
+	 */
+	public long getTime()
+	{
+		return time;
+	}
+}
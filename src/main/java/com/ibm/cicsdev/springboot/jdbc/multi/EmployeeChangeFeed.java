@@ -0,0 +1,418 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Feed of the changes this application commits to the EMP table, sent to subscribers as Server-Sent Events
+ *
+ * Each DataSource has a ring buffer holding its last employee.changes.capacity changes, numbered
+ * in the order they were committed. Writers only add to the ring and wake the subscribers, the events
+ * are sent by a small pool of delivery threads, so a slow subscriber never holds up a write.
+ *
+ * A subscriber resumes from the id of the last event it saw. If that change is no longer in the ring,
+ * because the subscriber fell too far behind or the application has restarted since, it is sent a
+ * reset event and carries on from the latest change, and should read the table again.
+ */
+@Component
+public class EmployeeChangeFeed implements EmployeeWriteListener
+{
+	// Changes held for each DataSource, for subscribers to catch up from
+	@Value("${employee.changes.capacity:10000}")
+	private int capacity;
+	
+	// Most subscribers at once, across both DataSources
+	@Value("${employee.changes.maxSubscribers:100}")
+	private int maxSubscribers;
+	
+	// Threads sending events to subscribers
+	@Value("${employee.changes.threads:2}")
+	private int threads;
+	
+	// Time after which a subscription is closed, and the subscriber reconnects with the last event id
+	@Value("${employee.changes.timeoutMillis:300000}")
+	private long timeoutMillis;
+	
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	// Most events sent to a subscriber before letting other subscribers have the thread
+	private static final int BATCH = 100;
+	
+	// Identifies this run of the application in event ids, so ids from before a restart are recognised
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+	
+	private final Map<DataSourceType, Ring> rings = new EnumMap<>(DataSourceType.class);
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+	private ThreadPoolExecutor executor;
+	
+	private final LongAdder published = new LongAdder();
+	private final LongAdder delivered = new LongAdder();
+	private final LongAdder resets = new LongAdder();
+	
+	
+	@PostConstruct
+	void start()
+	{
+		for (DataSourceType type : DataSourceType.values())
+		{
+			this.rings.put(type, new Ring(Math.max(1, this.capacity)));
+		}
+		
+		// each subscriber has at most one delivery waiting, so the queue is bounded by maxSubscribers
+		this.executor = new ThreadPoolExecutor(Math.max(1, this.threads), Math.max(1, this.threads), 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), this.threadFactory);
+	}
+	
+	
+	@PreDestroy
+	void stop()
+	{
+		this.subscribers.forEach(subscriber -> subscriber.emitter.complete());
+		this.executor.shutdownNow();
+	}
+	
+	
+	@Override
+	public void employeeAdded(DataSourceType type, Employee employee)
+	{
+		publish(type, EmployeeChange.ADDED, employee.getEmpNo(), employee, null);
+	}
+	
+	
+	@Override
+	public void employeeDeleted(DataSourceType type, String empNo)
+	{
+		publish(type, EmployeeChange.DELETED, empNo, null, null);
+	}
+	
+	
+	@Override
+	public void salaryUpdated(DataSourceType type, String empNo, long salary)
+	{
+		publish(type, EmployeeChange.SALARY_UPDATED, empNo, null, salary);
+	}
+	
+	
+	// Add a change to the ring of its DataSource, and wake its subscribers
+	private void publish(DataSourceType type, String change, String empNo, Employee employee, Long salary)
+	{
+		this.rings.get(type).publish(change, empNo, employee, salary);
+		this.published.increment();
+		
+		for (Subscriber subscriber : this.subscribers)
+		{
+			if (subscriber.type == type)
+			{
+				subscriber.wake();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Subscribe to the changes made through one DataSource
+	 *
+	 * @param type - the DataSource
+	 * @param lastEventId - id of the last event the subscriber saw, or null for only new changes
+	 * @return the emitter to return from the request handler
+	 * @throws RejectedExecutionException if there are already employee.changes.maxSubscribers subscribers
+	 */
+	public SseEmitter subscribe(DataSourceType type, String lastEventId)
+	{
+		if (this.subscribers.size() >= this.maxSubscribers)
+		{
+			throw new RejectedExecutionException("Too many change feed subscribers, try again later");
+		}
+		
+		Ring ring = this.rings.get(type);
+		Subscriber subscriber = new Subscriber(type, new SseEmitter(this.timeoutMillis),
+				lastEventId == null ? ring.latest() : sequenceOf(lastEventId));
+		
+		SseEmitter emitter = subscriber.emitter;
+		emitter.onCompletion(subscriber::close);
+		emitter.onTimeout(subscriber::close);
+		emitter.onError(e -> subscriber.close());
+		
+		this.subscribers.add(subscriber);
+		subscriber.wake();
+		return emitter;
+	}
+	
+	
+	// The sequence number in an event id, or -1 if it is from before a restart, which forces a reset
+	private long sequenceOf(String eventId)
+	{
+		int dash = eventId.indexOf('-');
+		if (dash >= 0 && !eventId.substring(0, dash).equals(this.epoch))
+		{
+			return -1;
+		}
+		
+		try
+		{
+			return Long.parseLong(eventId.substring(dash + 1));
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("Invalid change feed event id: " + eventId);
+		}
+	}
+	
+	
+	// The id sent with the event for a change
+	private String eventId(long sequence)
+	{
+		return this.epoch + "-" + sequence;
+	}
+	
+	
+	// The last employee.changes.capacity changes made through one DataSource
+	static class Ring
+	{
+		private final EmployeeChange[] changes;
+		
+		// sequence number of the next change
+		private long next = 1;
+		
+		Ring(int capacity)
+		{
+			this.changes = new EmployeeChange[capacity];
+		}
+		
+		synchronized void publish(String change, String empNo, Employee employee, Long salary)
+		{
+			this.changes[(int) (this.next % this.changes.length)] = new EmployeeChange(this.next, change, empNo, employee, salary, System.currentTimeMillis());
+			this.next++;
+		}
+		
+		synchronized long latest()
+		{
+			return this.next - 1;
+		}
+		
+		/**
+		 * Copy up to max changes after a sequence number
+		 *
+		 * @return false if some of the changes after the sequence number are no longer held,
+		 * or the sequence number has not been reached
+		 */
+		synchronized boolean read(long after, List<EmployeeChange> into, int max)
+		{
+			long oldest = Math.max(1, this.next - this.changes.length);
+			if (after < oldest - 1 || after >= this.next)
+			{
+				return false;
+			}
+			
+			for (long sequence = after + 1; sequence < this.next && into.size() < max; sequence++)
+			{
+				into.add(this.changes[(int) (sequence % this.changes.length)]);
+			}
+			return true;
+		}
+	}
+	
+	
+	// One subscriber, sent the changes after its position by one delivery thread at a time
+	private class Subscriber implements Runnable
+	{
+		private final DataSourceType type;
+		private final SseEmitter emitter;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile boolean closed;
+		
+		// sequence number of the last change sent
+		private long position;
+		
+		Subscriber(DataSourceType type, SseEmitter emitter, long position)
+		{
+			this.type = type;
+			this.emitter = emitter;
+			this.position = position;
+		}
+		
+		// Schedule a delivery, unless one is already scheduled or running
+		void wake()
+		{
+			if (!this.closed && this.scheduled.compareAndSet(false, true))
+			{
+				try
+				{
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException e)
+				{
+					// shutting down
+					this.scheduled.set(false);
+				}
+			}
+		}
+		
+		@Override
+		public void run()
+		{
+			Ring ring = rings.get(this.type);
+			List<EmployeeChange> batch = new ArrayList<>(BATCH);
+			try
+			{
+				while (!this.closed)
+				{
+					batch.clear();
+					if (!ring.read(this.position, batch, BATCH))
+					{
+						// missed changes, tell the subscriber to read the table again, then carry on from the latest
+						this.position = ring.latest();
+						this.emitter.send(SseEmitter.event().id(eventId(this.position)).name("reset").data(this.position));
+						resets.increment();
+						continue;
+					}
+					
+					if (batch.isEmpty())
+					{
+						this.scheduled.set(false);
+						
+						// a change published since the read would otherwise wait for the next one
+						if (ring.latest() > this.position && this.scheduled.compareAndSet(false, true))
+						{
+							continue;
+						}
+						return;
+					}
+					
+					for (EmployeeChange change : batch)
+					{
+						this.emitter.send(SseEmitter.event().id(eventId(change.getSequence())).name(change.getChange())
+								.data(change, MediaType.APPLICATION_JSON));
+						this.position = change.getSequence();
+						delivered.increment();
+					}
+					
+					// let other subscribers have the thread before sending any more
+					if (ring.latest() > this.position)
+					{
+						this.scheduled.set(false);
+						wake();
+						return;
+					}
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// the subscriber has gone
+				this.emitter.completeWithError(e);
+				close();
+			}
+		}
+		
+		void close()
+		{
+			this.closed = true;
+			subscribers.remove(this);
+		}
+	}
+	
+	
+	/**
+	 * @return the number of subscribers, and changes published and sent
+	 */
+	public Statistics getStatistics()
+	{
+		Map<DataSourceType, Long> latest = new EnumMap<>(DataSourceType.class);
+		this.rings.forEach((type, ring) -> latest.put(type, ring.latest()));
+		return new Statistics(this.subscribers.size(), this.published.sum(), this.delivered.sum(), this.resets.sum(), latest);
+	}
+	
+	
+	/**
+	 * Change feed statistics
+	 */
+	public static class Statistics
+	{
+		private final int subscribers;
+		private final long published;
+		private final long delivered;
+		private final long resets;
+		private final Map<DataSourceType, Long> latest;
+		
+		Statistics(int subscribers, long published, long delivered, long resets, Map<DataSourceType, Long> latest)
+		{
+			this.subscribers = subscribers;
+			this.published = published;
+			this.delivered = delivered;
+			this.resets = resets;
+			this.latest = latest;
+		}
+		
+		/**
+		 * @return the number of subscribers
+		 */
+		public int getSubscribers()
+		{
+			return subscribers;
+		}
+		
+		/**
+		 * @return the number of changes published
+		 */
+		public long getPublished()
+		{
+			return published;
+		}
+		
+		/**
+		 * @return the number of events sent to subscribers, one for each change and subscriber
+		 */
+		public long getDelivered()
+		{
+			return delivered;
+		}
+		
+		/**
+		 * @return the number of times a subscriber missed changes and was told to read the table again
+		 */
+		public long getResets()
+		{
+			return resets;
+		}
+		
+		/**
+		 * @return the sequence number of the latest change on each DataSource
+		 */
+		public Map<DataSourceType, Long> getLatest()
+		{
+			return latest;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ *
+ * Employee change feed REST controller
+ *
+ * Lets a client follow the changes committed by this application as Server-Sent Events,
+ * instead of reading /{jdbcType}/allEmployees again to find them.
+ */
+@RestController
+public class EmployeeChangeRestController
+{
+	@Autowired
+	private EmployeeChangeFeed employeeChangeFeed;
+	
+	
+	/**
+	 * Follow the changes made through one DataSource
+	 *
+	 * Each event is named added, deleted or salaryUpdated, and its data is the EmployeeChange as JSON.
+	 * A reset event means changes were missed, and the table should be read again.
+	 *
+	 * @param jdbcType - type2 or type4
+	 * @param after - id of the last event seen, to resume from
+	 * @param lastEventId - the same, as sent by an EventSource when it reconnects
+	 * @return the event stream
+	 */
+	@GetMapping(value = "/{jdbcType}/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter changes(@PathVariable String jdbcType, @RequestParam(required = false) String after,
+			@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId)
+	{
+		if (!jdbcType.equalsIgnoreCase("type2") && !jdbcType.equalsIgnoreCase("type4"))
+		{
+			throw new IllegalArgumentException("Changes are numbered separately for each DataSource, use type2 or type4");
+		}
+		
+		return this.employeeChangeFeed.subscribe(DataSourceType.of(jdbcType), after != null ? after : lastEventId);
+	}
+	
+	
+	/**
+	 * Report an unknown jdbcType or event id as HTTP 400
+	 *
+	 * @param e - the exception thrown by the handler
+	 * @return the exception message
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> badRequest(IllegalArgumentException e)
+	{
+		return ResponseEntity.badRequest().body(e.getMessage());
+	}
+	
+	
+	/**
+	 * Report too many subscribers as HTTP 503
+	 *
+	 * @param e - the exception thrown by the change feed
+	 * @return the exception message
+	 */
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<String> tooBusy(RejectedExecutionException e)
+	{
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+	}
+}
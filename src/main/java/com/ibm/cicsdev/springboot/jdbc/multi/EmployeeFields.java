@@ -0,0 +1,215 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+
+/**
+ * A projection of the EMP table - the set of Employee properties a caller has asked for
+ * 
+ * Used to build a narrowed SELECT column list and a JSON filter which only serializes 
+ * those properties. EmployeeRowMapper reads whichever of the columns are selected.
+ */
+public class EmployeeFields 
+{
+	/** Id of the Jackson filter declared on the Employee class */
+	public static final String FILTER_ID = "employeeFields";
+	
+	/** Filters used when no projection has been requested - every property is serialized */
+	public static final FilterProvider ALL_FILTERS = new SimpleFilterProvider()
+			.setDefaultFilter(SimpleBeanPropertyFilter.serializeAll());
+
+	
+	/**
+	 * The columns of the EMP table and the Employee property each one maps to, in table order
+	 */
+	public enum Field 
+	{
+		EMPNO("empNo"),
+		FIRSTNME("firstName"),
+		MIDINIT("midinit"),
+		LASTNAME("lastName"),
+		WORKDEPT("workdept"),
+		PHONENO("phoneNo"),
+		HIREDATE("hireDate"),
+		JOB("job"),
+		EDLEVEL("edLevel"),
+		SEX("sex"),
+		BIRTHDATE("birthDate"),
+		SALARY("salary"),
+		BONUS("bonus"),
+		COMM("comm");
+		
+		private final String property;
+		
+		Field(String property)
+		{
+			this.property = property;
+		}
+		
+		/**
+		 * @return the name of the Employee property, as it appears in JSON
+		 */
+		public String getProperty()
+		{
+			return property;
+		}
+		
+		/**
+		 * @return the name of the EMP column
+		 */
+		public String getColumn()
+		{
+			return name();
+		}
+		
+		// find a field by its (case insensitive) property name
+		static Field forProperty(String property)
+		{
+			for (Field field : values())
+			{
+				if (field.property.equalsIgnoreCase(property))
+				{
+					return field;
+				}
+			}
+			
+			throw new IllegalArgumentException("unknown employee field " + property);
+		}
+	}
+	
+	
+	/** Every column of the EMP table */
+	public static final EmployeeFields ALL = new EmployeeFields(EnumSet.allOf(Field.class));
+	
+	
+	private final Set<Field> fields;
+	private final String columnList;
+	private final FilterProvider filters;
+	
+	
+	private EmployeeFields(Set<Field> fields)
+	{
+		this(fields, filtersFor(fields));
+	}
+	
+	
+	private EmployeeFields(Set<Field> fields, FilterProvider filters)
+	{
+		this.fields = fields;
+		this.filters = filters;
+		
+		StringJoiner columns = new StringJoiner(", ");
+		for (Field field : fields)
+		{
+			columns.add(field.getColumn());
+		}
+		this.columnList = columns.toString();
+	}
+	
+	
+	// Build the JSON filters which only let through the properties of the given fields
+	private static FilterProvider filtersFor(Set<Field> fields)
+	{
+		if (fields.size() == Field.values().length)
+		{
+			return ALL_FILTERS;
+		}
+		
+		Set<String> properties = new TreeSet<>();
+		for (Field field : fields)
+		{
+			properties.add(field.getProperty());
+		}
+		
+		return new SimpleFilterProvider().addFilter(FILTER_ID, SimpleBeanPropertyFilter.filterOutAllExcept(properties));
+	}
+	
+	
+	/**
+	 * @param fields - a comma separated list of Employee property names, for example "empNo,lastName",
+	 * 				   or null or empty for all fields
+	 * @return the projection for those fields
+	 * @throws IllegalArgumentException if a name is not an Employee property
+	 */
+	public static EmployeeFields parse(String fields)
+	{
+		if (fields == null || fields.trim().isEmpty())
+		{
+			return ALL;
+		}
+		
+		Set<Field> selected = EnumSet.noneOf(Field.class);
+		for (String property : fields.split(","))
+		{
+			if (!property.trim().isEmpty())
+			{
+				selected.add(Field.forProperty(property.trim()));
+			}
+		}
+		
+		return selected.isEmpty() || selected.size() == Field.values().length ? ALL : new EmployeeFields(selected);
+	}
+	
+	
+	/**
+	 * @return this projection with the EMPNO column added to the SELECT list (but not to the JSON output),
+	 * 		   for queries which need the key of each row
+	 */
+	public EmployeeFields withEmpNo()
+	{
+		if (this.fields.contains(Field.EMPNO))
+		{
+			return this;
+		}
+		
+		Set<Field> selected = EnumSet.copyOf(this.fields);
+		selected.add(Field.EMPNO);
+		
+		return new EmployeeFields(selected, this.filters);
+	}
+	
+	
+	/**
+	 * @param field - an EMP column
+	 * @return true if this projection includes the column
+	 */
+	public boolean contains(Field field)
+	{
+		return this.fields.contains(field);
+	}
+	
+	
+	/**
+	 * @return the columns of this projection, for use as a SELECT list
+	 */
+	public String getColumnList()
+	{
+		return columnList;
+	}
+	
+	
+	/**
+	 * @return the Jackson filters which serialize only the properties of this projection
+	 */
+	public FilterProvider getFilters()
+	{
+		return filters;
+	}
+}
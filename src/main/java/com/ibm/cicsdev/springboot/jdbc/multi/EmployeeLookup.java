@@ -0,0 +1,51 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * class representing the result of looking up several employee numbers at once
+ */
+public class EmployeeLookup
+{
+	private Map<String, Employee> employees;
+	private List<String> missing;
+
+
+	/**
+	 * @param employees	- the employees found, keyed by the employee number asked for, in the order asked for
+	 * @param missing	- the employee numbers asked for which were not found
+	 */
+	public EmployeeLookup(Map<String, Employee> employees, List<String> missing)
+	{
+		this.employees = employees;
+		this.missing = missing;
+	}
+
+	/**
+	 * @return the employees found, keyed by employee number
+	 */
+	public Map<String, Employee> getEmployees()
+	{
+		return employees;
+	}
+
+	/**
+	 * @return the employee numbers which were not found
+	 */
+	public List<String> getMissing()
+	{
+		return missing;
+	}
+}
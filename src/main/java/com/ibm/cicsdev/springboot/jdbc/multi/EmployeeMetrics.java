@@ -0,0 +1,384 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Per-phase latency histograms for each EmployeeService operation, on each DataSource
+ * 
+ * An operation is timed by a Timer, one of which is kept for each thread and reused, 
+ * so timing a request does not allocate. The phases are:
+ *    CONNECTION    - getting a connection from the DataSource (see TimedDataSource)
+ *    EXECUTE       - running the statement and fetching rows, the rest of the database time
+ *    MAPPING       - building Employee objects from the ResultSet
+ *    SERIALIZATION - writing the result to the HTTP response (see SerializationTimer)
+ *    TOTAL         - the whole EmployeeService call
+ * 
+ * The start and end of each operation are also passed to the DataSourceRouter, 
+ * which uses them to route requests for the "auto" jdbcType.
+ */
+@Component
+public class EmployeeMetrics 
+{
+	/**
+	 * The EmployeeService operations which are timed
+	 */
+	public enum Operation 
+	{
+		SELECT_ALL,
+		SELECT_PAGE,
+		STREAM_ALL,
+		SELECT_WHERE_EMPNO,
+		SELECT_WHERE_EMPNO_IN,
+		ADD,
+		ADD_BATCH,
+		UNIT_OF_WORK,
+		DELETE,
+		UPDATE_SALARY,
+		STATS_BY_DEPT,
+		STATS_PAYROLL
+	}
+	
+	
+	/**
+	 * The phases each operation is split into
+	 */
+	public enum Phase 
+	{
+		CONNECTION,
+		EXECUTE,
+		MAPPING,
+		SERIALIZATION,
+		TOTAL
+	}
+	
+	
+	// the Timer for each thread
+	private static final ThreadLocal<Timer> TIMERS = new ThreadLocal<>();
+	
+	// histograms[operation][type][phase], all created up front
+	private final LatencyHistogram[][][] histograms;
+	
+	@Autowired
+	private DataSourceRouter router;
+	
+	
+	public EmployeeMetrics()
+	{
+		this.histograms = new LatencyHistogram[Operation.values().length][DataSourceType.values().length][Phase.values().length];
+		for (LatencyHistogram[][] byType : this.histograms)
+		{
+			for (LatencyHistogram[] byPhase : byType)
+			{
+				for (int i = 0; i < byPhase.length; i++)
+				{
+					byPhase[i] = new LatencyHistogram();
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Start timing an operation on this thread
+	 * 
+	 * @param operation - the EmployeeService operation
+	 * @param type - the DataSource it runs against
+	 * @return the timer for this thread, which must be stopped when the operation ends
+	 */
+	public Timer start(Operation operation, DataSourceType type)
+	{
+		Timer timer = TIMERS.get();
+		if (timer == null)
+		{
+			timer = new Timer(this);
+			TIMERS.set(timer);
+		}
+		
+		timer.start(operation, type);
+		return timer;
+	}
+	
+	
+	/**
+	 * @return the timer for this thread, or null if no operation has been timed on this thread
+	 */
+	static Timer current()
+	{
+		return TIMERS.get();
+	}
+	
+	
+	/**
+	 * @param operation - the EmployeeService operation
+	 * @param type - the DataSource
+	 * @param phase - the phase
+	 * @return the histogram for that operation, DataSource and phase
+	 */
+	public LatencyHistogram histogram(Operation operation, DataSourceType type, Phase phase)
+	{
+		return this.histograms[operation.ordinal()][type.ordinal()][phase.ordinal()];
+	}
+	
+	
+	/**
+	 * @return a snapshot of every histogram which has recorded something
+	 */
+	public List<Entry> getEntries()
+	{
+		List<Entry> entries = new ArrayList<>();
+		for (Operation operation : Operation.values())
+		{
+			for (DataSourceType type : DataSourceType.values())
+			{
+				for (Phase phase : Phase.values())
+				{
+					LatencyHistogram.Snapshot snapshot = histogram(operation, type, phase).snapshot();
+					if (snapshot.getCount() > 0)
+					{
+						entries.add(new Entry(operation, type, phase, snapshot));
+					}
+				}
+			}
+		}
+		return entries;
+	}
+	
+	
+	/**
+	 * Times the phases of one operation at a time on one thread
+	 */
+	public static class Timer implements RowMapper<Employee>
+	{
+		private final EmployeeMetrics metrics;
+		
+		private Operation operation;
+		private DataSourceType type;
+		private boolean running;
+		private long start;
+		private long connectionNanos;
+		private long mappingNanos;
+		private long serializationNanos;
+		private boolean fromCache;
+		private RowMapper<Employee> rowMapper;
+		
+		// set when the operation has stopped but its result has still to be serialized
+		private boolean serializationPending;
+		private long serializationStart;
+		
+		
+		Timer(EmployeeMetrics metrics)
+		{
+			this.metrics = metrics;
+		}
+		
+		
+		void start(Operation operation, DataSourceType type)
+		{
+			this.operation = operation;
+			this.type = type;
+			this.running = true;
+			this.connectionNanos = 0;
+			this.mappingNanos = 0;
+			this.serializationNanos = 0;
+			this.fromCache = false;
+			this.serializationPending = false;
+			this.serializationStart = 0;
+			this.metrics.router.started(type);
+			this.start = System.nanoTime();
+		}
+		
+		
+		/**
+		 * Stop timing the operation and record the phases
+		 */
+		public void stop()
+		{
+			if (!this.running)
+			{
+				return;
+			}
+			
+			long total = System.nanoTime() - this.start;
+			this.running = false;
+			this.rowMapper = null;
+			
+			// a cached answer says nothing about the DataSource, so the router only counts the request
+			if (this.fromCache)
+			{
+				this.metrics.router.finished(this.type);
+			}
+			else
+			{
+				this.metrics.router.finished(this.type, this.operation, total);
+			}
+			
+			record(Phase.TOTAL, total);
+			record(Phase.CONNECTION, this.connectionNanos);
+			record(Phase.MAPPING, this.mappingNanos);
+			record(Phase.EXECUTE, total - this.connectionNanos - this.mappingNanos - this.serializationNanos);
+			
+			// a streamed result is serialized while the operation runs, 
+			// otherwise serialization happens after the operation returns
+			if (this.serializationNanos > 0)
+			{
+				record(Phase.SERIALIZATION, this.serializationNanos);
+			}
+			else
+			{
+				this.serializationPending = true;
+			}
+		}
+		
+		
+		/**
+		 * @param rowMapper - the row mapper to time
+		 * @return this timer, as a row mapper which adds the time taken by rowMapper to the MAPPING phase
+		 */
+		public RowMapper<Employee> rowMapper(RowMapper<Employee> rowMapper)
+		{
+			this.rowMapper = rowMapper;
+			return this;
+		}
+
+
+		@Override
+		public Employee mapRow(ResultSet rs, int rowNum) throws SQLException 
+		{
+			long mapStart = System.nanoTime();
+			try
+			{
+				return this.rowMapper.mapRow(rs, rowNum);
+			}
+			finally
+			{
+				this.mappingNanos += System.nanoTime() - mapStart;
+			}
+		}
+		
+		
+		/**
+		 * Mark the operation as answered without using the database
+		 */
+		public void fromCache()
+		{
+			this.fromCache = true;
+		}
+		
+		
+		/**
+		 * @param nanos - time spent writing streamed rows to the response
+		 */
+		public void addSerialization(long nanos)
+		{
+			this.serializationNanos += nanos;
+		}
+		
+		
+		// Called by TimedDataSource
+		void addConnection(long nanos)
+		{
+			if (this.running)
+			{
+				this.connectionNanos += nanos;
+			}
+		}
+		
+		
+		// Called by SerializationTimer before the response body is written
+		void startSerialization()
+		{
+			if (this.serializationPending)
+			{
+				this.serializationStart = System.nanoTime();
+			}
+		}
+		
+		
+		// Called by SerializationTimer when the request completes
+		void stopSerialization()
+		{
+			if (this.serializationPending && this.serializationStart != 0)
+			{
+				record(Phase.SERIALIZATION, System.nanoTime() - this.serializationStart);
+			}
+			this.serializationPending = false;
+			this.serializationStart = 0;
+		}
+		
+		
+		private void record(Phase phase, long nanos)
+		{
+			this.metrics.histogram(this.operation, this.type, phase).record(nanos);
+		}
+	}
+	
+	
+	/**
+	 * The latency snapshot for one operation, DataSource and phase
+	 */
+	public static class Entry
+	{
+		private final Operation operation;
+		private final DataSourceType type;
+		private final Phase phase;
+		private final LatencyHistogram.Snapshot latency;
+		
+		Entry(Operation operation, DataSourceType type, Phase phase, LatencyHistogram.Snapshot latency)
+		{
+			this.operation = operation;
+			this.type = type;
+			this.phase = phase;
+			this.latency = latency;
+		}
+
+		/**
+		 * @return the EmployeeService operation
+		 */
+		public Operation getOperation()
+		{
+			return operation;
+		}
+
+		/**
+		 * @return the DataSource
+		 */
+		public DataSourceType getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @return the phase
+		 */
+		public Phase getPhase()
+		{
+			return phase;
+		}
+
+		/**
+		 * @return the latency counts and percentiles
+		 */
+		public LatencyHistogram.Snapshot getLatency()
+		{
+			return latency;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * class representing one operation of a unit of work, as posted to /{jdbcType}/employees/unitOfWork
+ */
+public class EmployeeOperation 
+{
+	/** insert an employee, with the other fields set as by addEmployee */
+	public static final String ADD = "add";
+
+	/** change the salary of an employee */
+	public static final String UPDATE = "update";
+
+	/** delete an employee */
+	public static final String DELETE = "delete";
+
+	private String op;
+	private String empNo;
+	private String firstName;
+	private String lastName;
+	private Integer salary;
+
+
+	/**
+	 * Create an empty operation, used when reading an operation from a JSON request body
+	 */
+	public EmployeeOperation() 
+	{
+	}
+
+	/**
+	 * @param op		- add, update or delete
+	 * @param empNo		- employee number, generated for an add without one
+	 * @param firstName	- first name of an employee to add
+	 * @param lastName	- last name of an employee to add
+	 * @param salary	- the new salary of an update, or the salary of an employee to add
+	 */
+	public EmployeeOperation(String op, String empNo, String firstName, String lastName, Integer salary) 
+	{
+		this.op = op;
+		this.empNo = empNo;
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.salary = salary;
+	}
+
+	/**
+	 * @return add, update or delete
+	 */
+	public String getOp()
+	{
+		return op;
+	}
+
+	/**
+	 * @param op - add, update or delete
+	 */
+	public void setOp(String op)
+	{
+		this.op = op;
+	}
+
+	/**
+	 * @return employee number
+	 */
+	public String getEmpNo()
+	{
+		return empNo;
+	}
+
+	/**
+	 * @param empNo - employee number
+	 */
+	public void setEmpNo(String empNo)
+	{
+		this.empNo = empNo;
+	}
+
+	/**
+	 * @return first name of an employee to add
+	 */
+	public String getFirstName()
+	{
+		return firstName;
+	}
+
+	/**
+	 * @param firstName - first name of an employee to add
+	 */
+	public void setFirstName(String firstName)
+	{
+		this.firstName = firstName;
+	}
+
+	/**
+	 * @return last name of an employee to add
+	 */
+	public String getLastName()
+	{
+		return lastName;
+	}
+
+	/**
+	 * @param lastName - last name of an employee to add
+	 */
+	public void setLastName(String lastName)
+	{
+		this.lastName = lastName;
+	}
+
+	/**
+	 * @return the new salary of an update, or the salary of an employee to add, or null
+	 */
+	public Integer getSalary()
+	{
+		return salary;
+	}
+
+	/**
+	 * @param salary - the new salary of an update, or the salary of an employee to add
+	 */
+	public void setSalary(Integer salary)
+	{
+		this.salary = salary;
+	}
+}
@@ -0,0 +1,82 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * class representing the outcome of one operation of a unit of work
+ */
+public class EmployeeOperationResult 
+{
+	private int index;
+	private String op;
+	private String empNo;
+	private boolean done;
+	private String message;
+
+
+	/**
+	 * @param index		- position of the operation in the request, starting at 0
+	 * @param op		- add, update or delete
+	 * @param empNo		- employee number the operation applied to
+	 * @param done		- true if the operation changed a row, and the unit of work committed
+	 * @param message	- a message describing the outcome
+	 */
+	public EmployeeOperationResult(int index, String op, String empNo, boolean done, String message) 
+	{
+		this.index = index;
+		this.op = op;
+		this.empNo = empNo;
+		this.done = done;
+		this.message = message;
+	}
+
+	/**
+	 * @return position of the operation in the request
+	 */
+	public int getIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return add, update or delete
+	 */
+	public String getOp()
+	{
+		return op;
+	}
+
+	/**
+	 * @return employee number the operation applied to
+	 */
+	public String getEmpNo()
+	{
+		return empNo;
+	}
+
+	/**
+	 * @return true if the operation changed a row, and the unit of work committed
+	 */
+	public boolean isDone()
+	{
+		return done;
+	}
+
+	/**
+	 * @return a message describing the outcome
+	 */
+	public String getMessage()
+	{
+		return message;
+	}
+}
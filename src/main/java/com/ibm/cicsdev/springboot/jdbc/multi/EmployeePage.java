@@ -0,0 +1,51 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.List;
+
+
+/**
+ * class representing one page of rows from the EMP table, in EMPNO order
+ */
+public class EmployeePage 
+{
+	private List<Employee> employees;
+	private String nextCursor;
+
+
+	/**
+	 * @param employees	- the employees on this page
+	 * @param nextCursor	- the EMPNO to pass as the 'after' parameter to get the next page, 
+	 * 					  or null if this is the last page
+	 */
+	public EmployeePage(List<Employee> employees, String nextCursor) 
+	{
+		this.employees = employees;
+		this.nextCursor = nextCursor;
+	}
+
+	/**
+	 * @return the employees on this page
+	 */
+	public List<Employee> getEmployees()
+	{
+		return employees;
+	}
+
+	/**
+	 * @return the cursor for the next page, or null if there are no more rows
+	 */
+	public String getNextCursor()
+	{
+		return nextCursor;
+	}
+}
@@ -0,0 +1,88 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+
+/**
+ *
+ * Employee report REST controller
+ *
+ * Salary and headcount reports, answered from the in-memory EmployeeSnapshot rather than by querying Db2.
+ */
+@RestController
+public class EmployeeReportRestController
+{
+	@Autowired
+	private EmployeeSnapshot employeeSnapshot;
+	
+	
+	/**
+	 * Report on one column for all employees
+	 *
+	 * @param measure - salary, bonus, comm or edLevel
+	 * @return the count, sum, average and percentiles of the column
+	 */
+	@GetMapping("/reports/{measure}")
+	public Map<String, EmployeeSnapshot.Summary> report(@PathVariable String measure)
+	{
+		return this.employeeSnapshot.report(EmployeeSnapshot.Measure.of(measure), EmployeeSnapshot.GroupBy.ALL);
+	}
+	
+	
+	/**
+	 * Report on one column for each department or job
+	 *
+	 * @param measure - salary, bonus, comm or edLevel
+	 * @param groupBy - workdept or job
+	 * @return the count, sum, average and percentiles of the column for each department or job
+	 */
+	@GetMapping("/reports/{measure}/by/{groupBy}")
+	public Map<String, EmployeeSnapshot.Summary> report(@PathVariable String measure, @PathVariable String groupBy)
+	{
+		return this.employeeSnapshot.report(EmployeeSnapshot.Measure.of(measure), EmployeeSnapshot.GroupBy.of(groupBy));
+	}
+	
+	
+	/**
+	 * Report an unknown measure or grouping as HTTP 400
+	 *
+	 * @param e - the exception thrown by the handler
+	 * @return the exception message
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> badRequest(IllegalArgumentException e)
+	{
+		return ResponseEntity.badRequest().body(e.getMessage());
+	}
+	
+	
+	/**
+	 * Report that the snapshot is not enabled as HTTP 503
+	 *
+	 * @param e - the exception thrown by the snapshot
+	 * @return the exception message
+	 */
+	@ExceptionHandler(IllegalStateException.class)
+	public ResponseEntity<String> notEnabled(IllegalStateException e)
+	{
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+	}
+}
@@ -10,16 +10,36 @@
 
 package com.ibm.cicsdev.springboot.jdbc.multi;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
 
 
 /**
@@ -29,7 +49,8 @@ import org.springframework.web.bind.annotation.RestController;
  * A REST controller used to direct incoming REST requests to the correct business service.
  *  
  * In a real world application some of these functions would most likely be done by a POST
- * request. For simplicity all requests to this sample application are done with a GET request
+ * request. For simplicity most requests to this sample application are done with a GET request,
+ * only the requests which carry a JSON body use POST
  */
 @RestController
 public class EmployeeRestController
@@ -37,6 +58,18 @@ public class EmployeeRestController
 	@Autowired  
 	private EmployeeService employeeService;
 	
+	@Autowired
+	private ObjectMapper objectMapper;
+	
+	@Autowired
+	private SalaryWriteBehind salaryWriteBehind;
+	
+	@Autowired
+	private DataSourceVerifier dataSourceVerifier;
+	
+	@Autowired
+	private EmployeeVersions employeeVersions;
+	
 		
 	/**
 	 * Root endpoint
@@ -53,29 +86,160 @@ public class EmployeeRestController
 		
 		return "<h1>Spring Boot JDBC Employee REST sample (Multiple DataSources).</h1><br>"
 		+ "Date/Time: " + myDateString + "<br>"
-		+ "<h3>Usage: .../type2|type4/{command} </h3>"
+		+ "<h3>Usage: .../type2|type4|auto/{command} </h3>"
+		+ "auto - use whichever DataSource is currently the least busy and fastest<br><br>"
 		+ "<b>/{type}/allEmployees</b> - return a list of employees using a classic SELECT statement<br>"
+		+ "<b>/{type}/allEmployees?limit={n}&after={cursor}</b> - return one page of employees, and the cursor for the next page<br>"
+		+ "<b>/{type}/allEmployees/stream</b> - stream all employees row by row, without building the list in memory<br>"
+		+ "<b>...?fields=empNo,firstName,lastName</b> - on any of the list requests, return only the named properties<br>"
+		+ "allEmployees and listEmployee send an ETag, and answer a matching If-None-Match with 304 Not Modified, when employee.etag.enabled is set<br>"
 		+ "<b>/{type}/listEmployee/{empno}</b> - a list of employee records for the employee number provided<br>"
+		+ "<b>/{type}/listEmployees?empno={empno},{empno},...</b> - several employees in one request, keyed by employee number, "
+		+ "with those not found listed as missing (or POST a JSON array of employee numbers)<br>"
+		+ "<b>/{type}/stats/byDept</b> - headcount and pay totals for each department, summed by Db2<br>"
+		+ "<b>/{type}/stats/payroll</b> - headcount and pay totals for all employees, summed by Db2<br>"
+		+ "<b>/{type2|type4}/changes?after={eventId}</b> - follow the changes committed through the DataSource, as Server-Sent Events<br>"
 		+ "<br> --- Update operations --- <br>"
 		+ "<b>/{type}/addEmployee/{firstName}/{lastName}</b> - add an employee<br>"				
+		+ "<b>POST /{type}/employees/batch</b> - add a JSON array of employees using JDBC batching, committing each chunk<br>"
+		+ "<b>POST /{type}/employees/unitOfWork</b> - apply a JSON array of add, update and delete operations in one transaction on one connection<br>"
 		+ "<b>/{type}/deleteEmployee/{empNo}</b> - delete an employee<br>"
 		+ "<b>/{type}/updateEmployee/{empNo}/{newSalary}</b> - update employee salary"
 		+ "<br> --- Update operations within a Global (XA) Transaction --- <br>"
 		+ "<b>/{type}/addEmployeeTx/{firstName}/{lastName}</b> - add an employee<br>"				
 		+ "<b>/{type}/deleteEmployeeTx/{empNo}</b> - delete an employee<br>"
-		+ "<b>/{type}/updateEmployeeTx/{empNo}/{newSalary}</b> - update employee salary";
+		+ "<b>/{type}/updateEmployeeTx/{empNo}/{newSalary}</b> - update employee salary<br>"
+		+ "with employee.tx.onePhase set, type2 and type4 commit locally and only auto uses a global transaction<br>"
+		+ "<b>/flushSalaryUpdates</b> - write any salary updates queued by the write-behind option"
+		+ "<br> --- Asynchronous operations --- <br>"
+		+ "<b>/async/{type}/...</b> - allEmployees, listEmployee, addEmployee, deleteEmployee and updateEmployee, "
+		+ "run on a bounded executor for each DataSource so the request thread is not held<br>"
+		+ "<br> --- Consistency --- <br>"
+		+ "<b>/verify</b> - compare every employee on the type2 and type4 DataSources, and list those which differ<br>"
+		+ "<br> --- Reports, from an in-memory snapshot --- <br>"
+		+ "<b>/reports/{measure}</b> - count, sum, average and percentiles of salary, bonus, comm or edLevel<br>"
+		+ "<b>/reports/{measure}/by/{workdept|job}</b> - the same, for each department or job<br>"
+		+ "<br> --- Metrics --- <br>"
+		+ "<b>/metrics/cache</b> - employee cache hit, miss and eviction counts<br>"
+		+ "<b>/metrics/writeBehind</b> - salary write-behind queue depth and counts<br>"
+		+ "<b>/metrics/latency</b> - latency percentiles for each operation, DataSource and phase<br>"
+		+ "<b>/metrics/routing</b> - requests routed to each DataSource by the auto type, and whether it is ready<br>"
+		+ "<b>/metrics/hedging</b> - employee lookups hedged on the other DataSource<br>"
+		+ "<b>/metrics/executors</b> - thread and queue use of the asynchronous executors<br>"
+		+ "<b>/metrics/snapshot</b> - size and age of the snapshot used by the reports<br>"
+		+ "<b>/metrics/warmup</b> - time taken to warm up each DataSource at startup<br>"
+		+ "<b>/metrics/changes</b> - change feed subscribers, and changes published and sent<br>"
+		+ "<b>/metrics/etag</b> - responses sent with an ETag, and requests answered with 304 Not Modified<br>"
+		+ "<b>/metrics/transactions</b> - transactions committed locally or globally, when employee.tx.onePhase is set";
 	}
 
 	
 	/**
 	 * Show all Employees
 	 * 
-	 * @return a list of employees
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @param request - the request, checked for an ETag of unchanged employees
+	 * @return a list of employees, or null if the client has the current list
 	 */
 	@GetMapping({"/{jdbcType}/allEmployees","/{jdbcType}/allEmployees/"})
-	public List<Employee> getAllEmployees(@PathVariable String jdbcType) 
+	public MappingJacksonValue getAllEmployees(@PathVariable String jdbcType, @RequestParam(required = false) String fields, 
+			ServletWebRequest request) 
+	{
+		if (this.employeeVersions.checkNotModified(request, jdbcType, null))
+		{
+			return null;
+		}
+		
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		return project(this.employeeService.selectAll(jdbcType, projection), projection);
+	}
+
+	
+	/**
+	 * Show one page of Employees, in EMPNO order
+	 * 
+	 * @param after - the nextCursor value from the previous page, omit for the first page
+	 * @param limit - the maximum number of employees to return
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @param request - the request, checked for an ETag of unchanged employees
+	 * @return a page of employees and the cursor for the next page, or null if the client has the current page
+	 */
+	@GetMapping(value = {"/{jdbcType}/allEmployees","/{jdbcType}/allEmployees/"}, params = "limit")
+	public MappingJacksonValue getEmployeePage(@PathVariable String jdbcType, 
+			@RequestParam(required = false) String after, @RequestParam int limit, @RequestParam(required = false) String fields, 
+			ServletWebRequest request) 
+	{
+		if (this.employeeVersions.checkNotModified(request, jdbcType, null))
+		{
+			return null;
+		}
+		
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		return project(this.employeeService.selectPage(jdbcType, after, limit, projection), projection);
+	}
+
+	
+	/**
+	 * Stream all Employees
+	 * 
+	 * Rows are written to the response as they are read from the database, 
+	 * so memory use stays flat however large the EMP table is.
+	 * 
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @param response - the HTTP response the JSON array is written to
+	 * @throws IOException
+	 */
+	@GetMapping("/{jdbcType}/allEmployees/stream")
+	public void streamAllEmployees(@PathVariable String jdbcType, @RequestParam(required = false) String fields, 
+			HttpServletResponse response) throws IOException
+	{
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		
+		// don't flush the response after every row, let the output buffers fill first
+		ObjectWriter writer = this.objectMapper.writer(projection.getFilters())
+				.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		
+		try (JsonGenerator generator = this.objectMapper.getFactory().createGenerator(response.getOutputStream()))
+		{
+			// if the query fails part way through, don't close off the array and make the
+			// truncated response look like a complete result
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+			
+			// leave the response stream to the container, and don't commit the response by flushing it,
+			// so a query which fails before the first row still gets the normal error response
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+			
+			// the array is started by the first row, so nothing is written until the query has produced one
+			this.employeeService.streamAll(jdbcType, projection, employee -> writeEmployee(writer, generator, employee));
+			if (generator.getOutputContext().inRoot())
+			{
+				generator.writeStartArray();
+			}
+			generator.writeEndArray();
+		}
+	}
+	
+	
+	// Write one employee to the generator, starting the array before the first one,
+	// rethrowing any IOException so it can escape the row callback
+	private void writeEmployee(ObjectWriter writer, JsonGenerator generator, Employee employee)
 	{
-		return this.employeeService.selectAll(jdbcType);
+		try 
+		{
+			if (generator.getOutputContext().inRoot())
+			{
+				generator.writeStartArray();
+			}
+			writer.writeValue(generator, employee);
+		} 
+		catch (IOException e) 
+		{
+			throw new UncheckedIOException(e);
+		}
 	}
 
 	
@@ -83,12 +247,95 @@ public class EmployeeRestController
 	 * List one Employee
 	 * 
 	 * @param empno - employee number
-	 * @return a list of employee records for the passed parameter number
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @param request - the request, checked for an ETag of an unchanged employee
+	 * @return a list of employee records for the passed parameter number, or null if the client has the current records
 	 */
 	@GetMapping("/{jdbcType}/listEmployee/{empno}")
-	public List<Employee> listEmployee(@PathVariable String jdbcType, @PathVariable String empno) 
+	public MappingJacksonValue listEmployee(@PathVariable String jdbcType, @PathVariable String empno, 
+			@RequestParam(required = false) String fields, ServletWebRequest request) 
+	{
+		if (this.employeeVersions.checkNotModified(request, jdbcType, empno))
+		{
+			return null;
+		}
+		
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		return project(this.employeeService.selectWhereEmpno(jdbcType, empno, projection), projection);
+	}
+	
+	
+	/**
+	 * Headcount and pay totals for each department
+	 * 
+	 * @return a summary for each department
+	 */
+	@GetMapping("/{jdbcType}/stats/byDept")
+	public List<PayrollSummary> departmentStatistics(@PathVariable String jdbcType) 
+	{
+		return this.employeeService.departmentStatistics(jdbcType);
+	}
+	
+	
+	/**
+	 * Headcount and pay totals for all employees
+	 * 
+	 * @return a summary of the whole table
+	 */
+	@GetMapping("/{jdbcType}/stats/payroll")
+	public PayrollSummary payroll(@PathVariable String jdbcType) 
+	{
+		return this.employeeService.payroll(jdbcType);
+	}
+	
+	
+	/**
+	 * List several Employees in one request
+	 * 
+	 * @param empno - comma separated list of employee numbers
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @return the employees found, keyed by employee number, and the employee numbers which were not found
+	 */
+	@GetMapping("/{jdbcType}/listEmployees")
+	public MappingJacksonValue listEmployees(@PathVariable String jdbcType, @RequestParam String empno, 
+			@RequestParam(required = false) String fields) 
 	{
-		return this.employeeService.selectWhereEmpno(jdbcType, empno);
+		List<String> empNos = new ArrayList<>();
+		for (String empNo : empno.split(","))
+		{
+			if (!empNo.trim().isEmpty())
+			{
+				empNos.add(empNo.trim());
+			}
+		}
+		
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		return project(this.employeeService.selectWhereEmpnoIn(jdbcType, empNos, projection), projection);
+	}
+	
+	
+	/**
+	 * List several Employees in one request, with the employee numbers in the request body
+	 * 
+	 * @param empNos - JSON array of employee numbers
+	 * @param fields - optional comma separated list of the Employee properties to return
+	 * @return the employees found, keyed by employee number, and the employee numbers which were not found
+	 */
+	@PostMapping("/{jdbcType}/listEmployees")
+	public MappingJacksonValue listEmployees(@PathVariable String jdbcType, @RequestBody List<String> empNos, 
+			@RequestParam(required = false) String fields) 
+	{
+		EmployeeFields projection = EmployeeFields.parse(fields);
+		return project(this.employeeService.selectWhereEmpnoIn(jdbcType, empNos, projection), projection);
+	}
+	
+	
+	// Wrap a result so that only the properties in the projection are serialized
+	private MappingJacksonValue project(Object value, EmployeeFields projection)
+	{
+		MappingJacksonValue result = new MappingJacksonValue(value);
+		result.setFilters(projection.getFilters());
+		return result;
 	}
 	
 	
@@ -108,6 +355,32 @@ public class EmployeeRestController
 	}
 
 	
+	/**
+	 * Add a list of Employees using JDBC batching
+	 * 
+	 * @param employees - JSON array of employees, an employee number is generated for any without one
+	 * @return the outcome of each row
+	 */
+	@PostMapping("/{jdbcType}/employees/batch")
+	public List<EmployeeBatchResult> addEmployees(@PathVariable String jdbcType, @RequestBody List<Employee> employees) 
+	{
+		return this.employeeService.addEmployees(jdbcType, employees);
+	}
+
+	
+	/**
+	 * Apply a list of adds, salary updates and deletes in one transaction on one connection
+	 * 
+	 * @param operations - JSON array of operations, each with an op of add, update or delete
+	 * @return the outcome of each operation
+	 */
+	@PostMapping("/{jdbcType}/employees/unitOfWork")
+	public List<EmployeeOperationResult> applyOperations(@PathVariable String jdbcType, @RequestBody List<EmployeeOperation> operations) 
+	{
+		return this.employeeService.applyOperations(jdbcType, operations);
+	}
+
+	
 	/**  
 	 * Add an employee within a Global (XA) transaction
 	 * Note the @Transactional annotation.
@@ -191,4 +464,41 @@ public class EmployeeRestController
 		return result;
 	}
 	
+	
+	/**
+	 * Write any salary updates queued by the write-behind option to the database
+	 * 
+	 * @return the number of employees updated on each DataSource
+	 */
+	@GetMapping("/flushSalaryUpdates")
+	public Map<DataSourceType, Integer> flushSalaryUpdates() 
+	{
+		return this.salaryWriteBehind.flush();
+	}
+	
+	
+	/**
+	 * Check that the type 2 and type 4 DataSources return the same employees
+	 * 
+	 * @return the number of employees which match, differ, or are on only one DataSource
+	 */
+	@GetMapping("/verify")
+	public DataSourceVerifier.Result verify() 
+	{
+		return this.dataSourceVerifier.verify();
+	}
+	
+	
+	/**
+	 * Report a bad request parameter, such as an unknown field name, as HTTP 400
+	 * 
+	 * @param e - the exception thrown by the handler
+	 * @return the exception message
+	 */
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<String> badRequest(IllegalArgumentException e)
+	{
+		return ResponseEntity.badRequest().body(e.getMessage());
+	}
+	
 }
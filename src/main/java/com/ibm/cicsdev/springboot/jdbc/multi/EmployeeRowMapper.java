@@ -0,0 +1,112 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import com.ibm.cicsdev.springboot.jdbc.multi.EmployeeFields.Field;
+
+
+/**
+ * Maps rows of the EMP table to Employee objects, reading each column by position
+ * 
+ * The position of each column is found from the ResultSet metadata when the first row 
+ * of a ResultSet is mapped, rather than being looked up by name on every row. Columns 
+ * which are not in the ResultSet (see EmployeeFields) are left null or zero.
+ * 
+ * A mapper remembers the ResultSet it last saw, so it should only be used by one query at a time.
+ */
+public class EmployeeRowMapper implements RowMapper<Employee>
+{
+	// column name to field, for resolving the metadata
+	private static final Map<String, Field> FIELDS = new HashMap<>();
+	static
+	{
+		for (Field field : Field.values())
+		{
+			FIELDS.put(field.getColumn(), field);
+		}
+	}
+	
+	// the ResultSet the positions were resolved for
+	private ResultSet resultSet;
+	
+	// position of each field in the ResultSet, indexed by Field ordinal - 0 if the column is absent
+	private final int[] positions = new int[Field.values().length];
+	
+	
+	@Override
+	public Employee mapRow(ResultSet rs, int rowNum) throws SQLException 
+	{
+		if (rs != this.resultSet)
+		{
+			resolve(rs);
+		}
+		
+		int[] p = this.positions;
+		return new Employee(
+				getString(rs, p[Field.EMPNO.ordinal()]),
+				getString(rs, p[Field.FIRSTNME.ordinal()]),
+				getString(rs, p[Field.MIDINIT.ordinal()]),
+				getString(rs, p[Field.LASTNAME.ordinal()]),
+				getString(rs, p[Field.WORKDEPT.ordinal()]),
+				getString(rs, p[Field.PHONENO.ordinal()]),
+				p[Field.HIREDATE.ordinal()] == 0 ? null : rs.getDate(p[Field.HIREDATE.ordinal()]),
+				getString(rs, p[Field.JOB.ordinal()]),
+				p[Field.EDLEVEL.ordinal()] == 0 ? 0 : rs.getInt(p[Field.EDLEVEL.ordinal()]),
+				getString(rs, p[Field.SEX.ordinal()]),
+				getString(rs, p[Field.BIRTHDATE.ordinal()]),
+				getLong(rs, p[Field.SALARY.ordinal()]),
+				getLong(rs, p[Field.BONUS.ordinal()]),
+				getLong(rs, p[Field.COMM.ordinal()]));
+	}
+	
+	
+	// Find the position of each EMP column in the ResultSet
+	private void resolve(ResultSet rs) throws SQLException
+	{
+		for (int i = 0; i < this.positions.length; i++)
+		{
+			this.positions[i] = 0;
+		}
+		
+		ResultSetMetaData metaData = rs.getMetaData();
+		for (int column = 1; column <= metaData.getColumnCount(); column++)
+		{
+			Field field = FIELDS.get(metaData.getColumnLabel(column).toUpperCase(Locale.ROOT));
+			if (field != null && this.positions[field.ordinal()] == 0)
+			{
+				this.positions[field.ordinal()] = column;
+			}
+		}
+		
+		this.resultSet = rs;
+	}
+	
+	
+	private static String getString(ResultSet rs, int position) throws SQLException
+	{
+		return position == 0 ? null : rs.getString(position);
+	}
+	
+	
+	private static long getLong(ResultSet rs, int position) throws SQLException
+	{
+		return position == 0 ? 0 : rs.getLong(position);
+	}
+}
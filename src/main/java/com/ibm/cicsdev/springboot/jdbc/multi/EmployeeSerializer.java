@@ -0,0 +1,183 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.BeanProperty;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.ContextualSerializer;
+import com.fasterxml.jackson.databind.ser.FilterProvider;
+import com.fasterxml.jackson.databind.ser.PropertyFilter;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import com.ibm.cicsdev.springboot.jdbc.multi.EmployeeFields.Field;
+
+
+/**
+ * Writes an Employee straight to the generator, with each property name encoded once up front
+ *
+ * Only used when every property is wanted. A projection is passed to the standard bean serializer,
+ * which applies the "employeeFields" filter. The properties are written in the same order, and in
+ * the same format, as the bean serializer writes them, so the output is identical either way.
+ */
+public class EmployeeSerializer extends StdSerializer<Employee> implements ContextualSerializer, ResolvableSerializer
+{
+	private static final long serialVersionUID = 1L;
+	
+	// property names, as JSON, by EmployeeFields.Field
+	private static final SerializedString[] NAMES = new SerializedString[Field.values().length];
+	static
+	{
+		for (Field field : Field.values())
+		{
+			NAMES[field.ordinal()] = new SerializedString(field.getProperty());
+		}
+	}
+	
+	// the filter used when no projection has been asked for
+	private static final PropertyFilter ALL = SimpleBeanPropertyFilter.serializeAll();
+	
+	// the standard serializer, used for projections
+	private final JsonSerializer<Object> beanSerializer;
+	
+	
+	/**
+	 * @param beanSerializer - the serializer Jackson built for Employee
+	 */
+	@SuppressWarnings("unchecked")
+	public EmployeeSerializer(JsonSerializer<?> beanSerializer)
+	{
+		super(Employee.class);
+		this.beanSerializer = (JsonSerializer<Object>) beanSerializer;
+	}
+	
+	
+	/**
+	 * @return a Jackson module which installs this serializer for Employee
+	 */
+	public static SimpleModule module()
+	{
+		SimpleModule module = new SimpleModule("EmployeeSerializer");
+		module.setSerializerModifier(new BeanSerializerModifier()
+		{
+			@Override
+			public JsonSerializer<?> modifySerializer(SerializationConfig config, BeanDescription beanDesc, JsonSerializer<?> serializer)
+			{
+				return beanDesc.getBeanClass() == Employee.class ? new EmployeeSerializer(serializer) : serializer;
+			}
+		});
+		return module;
+	}
+	
+	
+	@Override
+	public void serialize(Employee employee, JsonGenerator gen, SerializerProvider provider) throws IOException
+	{
+		FilterProvider filters = provider.getFilterProvider();
+		if (filters == null || filters.findPropertyFilter(EmployeeFields.FILTER_ID, employee) != ALL)
+		{
+			this.beanSerializer.serialize(employee, gen, provider);
+			return;
+		}
+		
+		// the order the bean serializer uses - properties with a matching field first, in field order,
+		// then firstName, whose field is called firstNme
+		gen.writeStartObject(employee);
+		writeString(gen, Field.EMPNO, employee.getEmpNo());
+		writeString(gen, Field.MIDINIT, employee.getMidinit());
+		writeString(gen, Field.LASTNAME, employee.getLastName());
+		writeString(gen, Field.WORKDEPT, employee.getWorkdept());
+		writeString(gen, Field.PHONENO, employee.getPhoneNo());
+		writeDate(gen, provider, Field.HIREDATE, employee.getHireEpochDay());
+		writeString(gen, Field.JOB, employee.getJob());
+		gen.writeFieldName(NAMES[Field.EDLEVEL.ordinal()]);
+		gen.writeNumber(employee.getEdLevel());
+		writeString(gen, Field.SEX, employee.getSex());
+		writeString(gen, Field.BIRTHDATE, employee.getBirthDate());
+		gen.writeFieldName(NAMES[Field.SALARY.ordinal()]);
+		gen.writeNumber(employee.getSalary());
+		gen.writeFieldName(NAMES[Field.BONUS.ordinal()]);
+		gen.writeNumber(employee.getBonus());
+		gen.writeFieldName(NAMES[Field.COMM.ordinal()]);
+		gen.writeNumber(employee.getComm());
+		writeString(gen, Field.FIRSTNME, employee.getFirstName());
+		gen.writeEndObject();
+	}
+	
+	
+	private static void writeString(JsonGenerator gen, Field field, String value) throws IOException
+	{
+		gen.writeFieldName(NAMES[field.ordinal()]);
+		if (value == null)
+		{
+			gen.writeNull();
+		}
+		else
+		{
+			gen.writeString(value);
+		}
+	}
+	
+	
+	// As Jackson's SqlDateSerializer - a timestamp, or yyyy-MM-dd as Spring Boot configures it
+	private static void writeDate(JsonGenerator gen, SerializerProvider provider, Field field, int epochDay) throws IOException
+	{
+		gen.writeFieldName(NAMES[field.ordinal()]);
+		if (epochDay == Employee.NO_DATE)
+		{
+			gen.writeNull();
+		}
+		else if (provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS))
+		{
+			gen.writeNumber(Date.valueOf(LocalDate.ofEpochDay(epochDay)).getTime());
+		}
+		else
+		{
+			gen.writeString(LocalDate.ofEpochDay(epochDay).toString());
+		}
+	}
+	
+	
+	@Override
+	public JsonSerializer<?> createContextual(SerializerProvider provider, BeanProperty property) throws JsonMappingException
+	{
+		JsonSerializer<?> contextual = this.beanSerializer;
+		if (contextual instanceof ContextualSerializer)
+		{
+			contextual = ((ContextualSerializer) contextual).createContextual(provider, property);
+		}
+		return contextual == this.beanSerializer ? this : new EmployeeSerializer(contextual);
+	}
+	
+	
+	@Override
+	public void resolve(SerializerProvider provider) throws JsonMappingException
+	{
+		if (this.beanSerializer instanceof ResolvableSerializer)
+		{
+			((ResolvableSerializer) this.beanSerializer).resolve(provider);
+		}
+	}
+}
@@ -10,14 +10,39 @@
 
 package com.ibm.cicsdev.springboot.jdbc.multi;
 
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.ibm.cicsdev.springboot.jdbc.multi.EmployeeMetrics.Operation;
 
 /**
  * Service class which retrieves the data requested by the REST controller
@@ -41,15 +66,93 @@ public class EmployeeService
 	@Qualifier("type4JdbcTemplate")
 	private JdbcTemplate jdbcTemplateT4;		
 
+	// Read-through cache of single employee lookups
+	@Autowired
+	private EmployeeCache employeeCache;
+	
+	// Tells the cache (and any other listeners) about committed changes
+	@Autowired
+	private EmployeeWriteEvents writeEvents;
+	
+	// Hedges slow single employee lookups on the other DataSource, when enabled
+	@Autowired
+	private HedgedLookup hedgedLookup;
+	
+	// Chooses a DataSource for the "auto" jdbcType
+	@Autowired
+	private DataSourceRouter router;
+	
+	// Per-phase latency histograms
+	@Autowired
+	private EmployeeMetrics metrics;
+	
+	// Number of rows the driver fetches per network round trip when streaming
+	@Value("${employee.stream.fetchSize:500}")
+	private int streamFetchSize;
+
+	// Upper limit on the number of rows returned in a single page
+	@Value("${employee.page.maxLimit:1000}")
+	private int pageMaxLimit;
+
+	// Largest IN list used to look up several employees, each list is padded to a power of two up to this size
+	@Value("${employee.multiGet.maxInList:64}")
+	private int multiGetMaxInList;
+
+	// Most employee numbers which can be looked up in one request
+	@Value("${employee.multiGet.maxKeys:1000}")
+	private int multiGetMaxKeys;
+
+	// Used to commit each chunk of a batch insert, and each unit of work
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	// Number of rows sent (and committed) together by a batch insert
+	@Value("${employee.batch.chunkSize:100}")
+	private int batchChunkSize;
+	
+	// Most operations which can be applied in one unit of work
+	@Value("${employee.unitOfWork.maxOperations:1000}")
+	private int unitOfWorkMaxOperations;
+	
+	// DataSources whose driver has not reported the rows changed by a batched update or delete
+	private final Set<DataSourceType> uncountedBatches = ConcurrentHashMap.newKeySet();
+
+	// The insert statement shared by single and batch inserts
+	private static final String INSERT_SQL = "insert into emp (EMPNO, FIRSTNME, MIDINIT,LASTNAME,WORKDEPT,PHONENO,HIREDATE,JOB,EDLEVEL,SEX,BIRTHDATE,SALARY,BONUS,COMM) values(?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+
+	// The salary update statement shared by single updates and the write-behind queue
+	static final String UPDATE_SALARY_SQL = "update emp set salary =? where empNo = ?";
+
+	private static final String DELETE_SQL = "DELETE FROM emp WHERE empno =?";
+
+	private static final String STATS_BY_DEPT_SQL = "SELECT WORKDEPT, COUNT(*), SUM(SALARY), SUM(BONUS), SUM(COMM) FROM emp GROUP BY WORKDEPT ORDER BY WORKDEPT";
+
+	private static final String PAYROLL_SQL = "SELECT COUNT(*), SUM(SALARY), SUM(BONUS), SUM(COMM) FROM emp";
+
+	// Chooses the employee number of each new employee
+	@Autowired
+	private EmpnoAllocator empnoAllocator;
+
+	// Queues salary updates, when write-behind is enabled
+	@Autowired
+	private SalaryWriteBehind salaryWriteBehind;
+
 	// Create a timestamp (used when adding an Employee)
-	private DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd"); 
 	private LocalDateTime now = LocalDateTime.now();
 	
 	
-	// Based on the jdbcType string, select which jdbcTemplate to use
-	private JdbcTemplate selectJdbcTemplate(String jdbcType)
+	// Based on the jdbcType string, select which DataSource to use.
+	// "auto" lets the router choose the DataSource which is currently answering the operation fastest.
+	private DataSourceType selectDataSource(String jdbcType, Operation operation)
 	{
-		if(jdbcType.equalsIgnoreCase("type2"))
+		return this.router.resolve(jdbcType, operation);
+	}
+	
+	
+	// Select the jdbcTemplate for a DataSource
+	private JdbcTemplate selectJdbcTemplate(DataSourceType type)
+	{
+		if(type == DataSourceType.TYPE2)
 		{
 			return this.jdbcTemplateT2;
 		}
@@ -58,73 +161,378 @@ public class EmployeeService
 	}
 	
 	
+	// The SQL for selectAll and streamAll
+	private static String selectAllSql(EmployeeFields fields)
+	{
+		return "SELECT " + fields.getColumnList() + " FROM emp";
+	}
+	
+	
+	// The SQL for selectPage, reading at most fetch rows
+	private static String selectPageSql(EmployeeFields fields, int fetch)
+	{
+		return "SELECT " + fields.getColumnList() + " FROM emp WHERE empno > ? ORDER BY empno FETCH FIRST " + fetch + " ROWS ONLY";
+	}
+	
+	
+	// The rows read for a page, one more than the page size rounded up to a power of two, so that 
+	// the page sizes clients ask for share a few statements rather than each preparing its own
+	private int pageFetchSize(int pageSize)
+	{
+		int fetch = 1;
+		while (fetch < pageSize + 1)
+		{
+			fetch <<= 1;
+		}
+		return Math.min(fetch, Math.max(1, this.pageMaxLimit) + 1);
+	}
+	
+	
+	// The SQL for selectWhereEmpno
+	private static String selectWhereEmpnoSql(EmployeeFields fields)
+	{
+		return "SELECT " + fields.getColumnList() + " FROM emp where empno = ?";
+	}
+	
+	
+	// The SQL for selectWhereEmpnoIn, with an IN list of size parameters
+	private static String selectWhereEmpnoInSql(EmployeeFields fields, int size)
+	{
+		StringBuilder sql = new StringBuilder("SELECT ").append(fields.getColumnList()).append(" FROM emp where empno in (?");
+		for (int i = 1; i < size; i++)
+		{
+			sql.append(",?");
+		}
+		return sql.append(')').toString();
+	}
+	
+	
+	/**
+	 * @return the statements run when every property is requested, which DataSourceWarmUp prepares on each new connection
+	 */
+	List<String> statements()
+	{
+		List<String> statements = new ArrayList<>(Arrays.asList(selectAllSql(EmployeeFields.ALL), selectWhereEmpnoSql(EmployeeFields.ALL), 
+				INSERT_SQL, DELETE_SQL, UPDATE_SALARY_SQL, STATS_BY_DEPT_SQL, PAYROLL_SQL));
+		
+		// one statement for each page fetch size, as chosen by pageFetchSize
+		int maxFetch = pageFetchSize(Math.max(1, this.pageMaxLimit));
+		for (int fetch = 2; fetch < maxFetch; fetch <<= 1)
+		{
+			statements.add(selectPageSql(EmployeeFields.ALL.withEmpNo(), fetch));
+		}
+		statements.add(selectPageSql(EmployeeFields.ALL.withEmpNo(), maxFetch));
+		
+		// and for each IN list size used by selectWhereEmpnoIn
+		int maxInList = Math.max(1, this.multiGetMaxInList);
+		for (int size = 1; size < maxInList; size <<= 1)
+		{
+			statements.add(selectWhereEmpnoInSql(EmployeeFields.ALL.withEmpNo(), size));
+		}
+		statements.add(selectWhereEmpnoInSql(EmployeeFields.ALL.withEmpNo(), maxInList));
+		
+		return statements;
+	}
+	
+	
 	
 	/**
 	 * Select all rows from the Employee table
 	 * 
+	 * @param fields - the columns to select
 	 * @return a list of employees
 	 * @throws NamingException
 	 */
-	public List<Employee> selectAll(String jdbcType) 
+	public List<Employee> selectAll(String jdbcType, EmployeeFields fields) 
 	{
 		// The jdbcType (2 or 4) is provided in the URL from the user/browser.
 		// We map it to the template DataSource which provides that capability.
-		JdbcTemplate jdbcTemplate = selectJdbcTemplate(jdbcType);
+		DataSourceType type = selectDataSource(jdbcType, Operation.SELECT_ALL);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
 		
 		// setup the select SQL
-		String sql = "SELECT * FROM emp";
+		String sql = selectAllSql(fields);
 
 		// run the query
-		return jdbcTemplate.query(
-				sql,
-				(rs, rowNum) ->
-				new Employee(
-						rs.getString("EMPNO"),
-						rs.getString("FIRSTNME"),
-						rs.getString("MIDINIT"),
-						rs.getString("LASTNAME"),
-						rs.getString("WORKDEPT"),
-						rs.getString("PHONENO"),
-						rs.getDate("HIREDATE"),
-						rs.getString("JOB"),
-						rs.getInt("EDLEVEL"),
-						rs.getString("SEX"),
-						rs.getString("BIRTHDATE"),
-						rs.getLong("SALARY"),
-						rs.getLong("BONUS"),
-						rs.getLong("COMM")));
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.SELECT_ALL, type);
+		try
+		{
+			return jdbcTemplate.query(
+					sql,
+					timer.rowMapper(new EmployeeRowMapper()));
+		}
+		finally
+		{
+			timer.stop();
+		}
+	}
+
+	
+	/**
+	 * Stream all rows from the Employee table, one row at a time
+	 * 
+	 * Each Employee is passed to the callback as soon as it is read from the ResultSet,
+	 * so no list of results is built up and heap use does not grow with the size of the table.
+	 * 
+	 * @param fields - the columns to select
+	 * @param callback - called once for each employee, in the order the rows are returned
+	 */
+	public void streamAll(String jdbcType, EmployeeFields fields, Consumer<Employee> callback) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.STREAM_ALL);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		String sql = selectAllSql(fields);
+
+		// use a forward-only cursor with an explicit fetch size so the driver only
+		// buffers one block of rows at a time
+		PreparedStatementCreator psc = con -> 
+		{
+			PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(this.streamFetchSize);
+			return ps;
+		};
+
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.STREAM_ALL, type);
+		RowMapper<Employee> rowMapper = timer.rowMapper(new EmployeeRowMapper());
+		try
+		{
+			jdbcTemplate.query(
+					psc,
+					(RowCallbackHandler) rs -> 
+					{
+						Employee employee = rowMapper.mapRow(rs, 0);
+						
+						// the callback writes the row to the response
+						long start = System.nanoTime();
+						callback.accept(employee);
+						timer.addSerialization(System.nanoTime() - start);
+					});
+		}
+		finally
+		{
+			timer.stop();
+		}
+	}
+
+
+	/**
+	 * Select one page of rows from the Employee table, in EMPNO order
+	 * 
+	 * Paging is done on the EMPNO key rather than with OFFSET, so Db2 can position 
+	 * directly on the primary key index and a deep page costs the same as the first one.
+	 * The number of rows read is rounded up to a power of two and the extra rows dropped, 
+	 * so any page size uses one of a few statements.
+	 * 
+	 * @param afterEmpNo - return rows with an EMPNO greater than this, or null for the first page
+	 * @param limit - the maximum number of rows to return
+	 * @param fields - the columns to select, EMPNO is always read as it is the page key
+	 * @return a page of employees, and the cursor to use for the next page
+	 */
+	public EmployeePage selectPage(String jdbcType, String afterEmpNo, int limit, EmployeeFields fields) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.SELECT_PAGE);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		int pageSize = Math.max(1, Math.min(limit, this.pageMaxLimit));
+		String after = afterEmpNo == null ? "" : afterEmpNo;
+		
+		// ask for at least one more row than the page size, to find out whether there is a next page
+		EmployeeFields keyedFields = fields.withEmpNo();
+		String sql = selectPageSql(keyedFields, pageFetchSize(pageSize));
+
+		List<Employee> employees;
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.SELECT_PAGE, type);
+		try
+		{
+			employees = jdbcTemplate.query(
+					sql,
+					new Object [] {after},
+					timer.rowMapper(new EmployeeRowMapper()));
+		}
+		finally
+		{
+			timer.stop();
+		}
+		
+		String nextCursor = null;
+		if (employees.size() > pageSize) 
+		{
+			employees = employees.subList(0, pageSize);
+			nextCursor = employees.get(pageSize - 1).getEmpNo();
+		}
+		
+		return new EmployeePage(employees, nextCursor);
 	}
 
 		
 	/**
 	 * @param empNo
+	 * @param fields - the columns to select
 	 * @return a list of employee records for a specific employee number
 	 */
-	public List<Employee> selectWhereEmpno(String jdbcType, String empNo) 
-	{
-		JdbcTemplate jdbcTemplate = selectJdbcTemplate(jdbcType);
-		
-		String sql = "SELECT * FROM emp where empno = ?";
-
-		return jdbcTemplate.query(
-				sql,
-				new Object [] {empNo},
-				(rs, rowNum) ->
-				new Employee(
-						rs.getString("EMPNO"),
-						rs.getString("FIRSTNME"),
-						rs.getString("MIDINIT"),
-						rs.getString("LASTNAME"),
-						rs.getString("WORKDEPT"),
-						rs.getString("PHONENO"),
-						rs.getDate("HIREDATE"),
-						rs.getString("JOB"),
-						rs.getInt("EDLEVEL"),
-						rs.getString("SEX"),
-						rs.getString("BIRTHDATE"),
-						rs.getLong("SALARY"),
-						rs.getLong("BONUS"),
-						rs.getLong("COMM")));
+	public List<Employee> selectWhereEmpno(String jdbcType, String empNo, EmployeeFields fields) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.SELECT_WHERE_EMPNO);
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.SELECT_WHERE_EMPNO, type);
+		try
+		{
+			// Only complete rows are cached, but a cached row can answer any projection
+			// as the unwanted properties are filtered out when the result is serialized
+			if (fields == EmployeeFields.ALL)
+			{
+				boolean[] loaded = new boolean[1];
+				List<Employee> result = this.employeeCache.get(type, empNo, () -> 
+				{
+					loaded[0] = true;
+					return queryWhereEmpno(type, empNo, timer.rowMapper(new EmployeeRowMapper()), fields);
+				});
+				if (!loaded[0])
+				{
+					timer.fromCache();
+				}
+				return result;
+			}
+			
+			return queryWhereEmpno(type, empNo, timer.rowMapper(new EmployeeRowMapper()), fields);
+		}
+		finally
+		{
+			timer.stop();
+		}
+	}
+	
+	
+	/**
+	 * Headcount and pay totals for each department, summed by Db2 so only one row per department is returned
+	 * 
+	 * @return a summary for each department, in department order
+	 */
+	public List<PayrollSummary> departmentStatistics(String jdbcType) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.STATS_BY_DEPT);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.STATS_BY_DEPT, type);
+		try
+		{
+			return jdbcTemplate.query(
+					STATS_BY_DEPT_SQL,
+					(rs, rowNum) -> new PayrollSummary(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4), rs.getLong(5)));
+		}
+		finally
+		{
+			timer.stop();
+		}
+	}
+	
+	
+	/**
+	 * Headcount and pay totals for the whole table, summed by Db2
+	 * 
+	 * @return a summary with no department
+	 */
+	public PayrollSummary payroll(String jdbcType) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.STATS_PAYROLL);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.STATS_PAYROLL, type);
+		try
+		{
+			return jdbcTemplate.queryForObject(
+					PAYROLL_SQL,
+					(rs, rowNum) -> new PayrollSummary(null, rs.getLong(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)));
+		}
+		finally
+		{
+			timer.stop();
+		}
+	}
+	
+	
+	/**
+	 * Look up several employees at once
+	 * 
+	 * The employee numbers are sent in IN lists of up to employee.multiGet.maxInList. Each list is padded,
+	 * by repeating its last employee number, to the next power of two, so however many employees are
+	 * asked for only a handful of different statements are prepared, and they stay in the statement cache.
+	 * 
+	 * @param empNos - the employee numbers, duplicates are only looked up once
+	 * @param fields - the columns to select, EMPNO is always read to match the rows to the employee numbers
+	 * @return the employees found, keyed by employee number, and the employee numbers which were not found
+	 */
+	public EmployeeLookup selectWhereEmpnoIn(String jdbcType, List<String> empNos, EmployeeFields fields) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.SELECT_WHERE_EMPNO_IN);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		List<String> keys = new ArrayList<>(new LinkedHashSet<>(empNos));
+		if (keys.size() > this.multiGetMaxKeys)
+		{
+			throw new IllegalArgumentException("At most " + this.multiGetMaxKeys + " employee numbers can be looked up at once");
+		}
+		
+		// EMPNO is CHAR(6), so a shorter employee number matches a row whose EMPNO has trailing blanks
+		EmployeeFields keyedFields = fields.withEmpNo();
+		Map<String, Employee> found = new HashMap<>();
+		int maxInList = Math.max(1, this.multiGetMaxInList);
+		
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.SELECT_WHERE_EMPNO_IN, type);
+		try
+		{
+			RowMapper<Employee> rowMapper = timer.rowMapper(new EmployeeRowMapper());
+			for (int start = 0; start < keys.size(); start += maxInList)
+			{
+				List<String> chunk = keys.subList(start, Math.min(start + maxInList, keys.size()));
+				int size = 1;
+				while (size < chunk.size())
+				{
+					size <<= 1;
+				}
+				
+				Object[] args = new Object[Math.min(size, maxInList)];
+				for (int i = 0; i < args.length; i++)
+				{
+					args[i] = chunk.get(Math.min(i, chunk.size() - 1));
+				}
+				
+				for (Employee employee : jdbcTemplate.query(selectWhereEmpnoInSql(keyedFields, args.length), rowMapper, args))
+				{
+					found.put(employee.getEmpNo().trim(), employee);
+				}
+			}
+		}
+		finally
+		{
+			timer.stop();
+		}
+		
+		Map<String, Employee> employees = new LinkedHashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String key : keys)
+		{
+			Employee employee = found.get(key.trim());
+			if (employee != null)
+			{
+				employees.put(key, employee);
+			}
+			else
+			{
+				missing.add(key);
+			}
+		}
+		
+		return new EmployeeLookup(employees, missing);
+	}
+	
+	
+	// Read the rows for one employee number from the database
+	private List<Employee> queryWhereEmpno(DataSourceType type, String empNo, RowMapper<Employee> rowMapper, EmployeeFields fields) 
+	{
+		String sql = selectWhereEmpnoSql(fields);
+
+		return this.hedgedLookup.query(type, sql, empNo, rowMapper);
 	}
 
 
@@ -135,22 +543,48 @@ public class EmployeeService
 	 */
 	public String addEmployee(String jdbcType, String fName, String lName) 
 	{
-		JdbcTemplate jdbcTemplate = selectJdbcTemplate(jdbcType);
+		DataSourceType type = selectDataSource(jdbcType, Operation.ADD);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
 		
 		// Firstname and lastname are passed in by the REST caller,
 		// for demo purposes all the other fields are set by this method      	
 		 
-		// generate an empNo between 300000 and 999999
-		int max = 999999;
-		int min = 300000;
-		String empno = String.valueOf((int) Math.round((Math.random()*((max-min)+1))+min));
+		// allocate an empNo, using the configured employee.empno.allocator
+		String empno = this.empnoAllocator.next(type);
+		Employee employee = newEmployee(empno, fName, lName);
 
+		// do the insert
+		int numRows;
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.ADD, type);
+		try
+		{
+			numRows = jdbcTemplate.update(INSERT_SQL, ps -> setInsertParameters(ps, employee));
+		}
+		finally
+		{
+			timer.stop();
+		}
+
+		// numRows is the number of rows inserted - will be zero if the insert fails
+		if (numRows > 0) 
+		{
+			this.writeEvents.employeeAdded(type, employee);
+			return "employee " + empno + " added";
+		}
+		
+		return "employee insert failed try again";
+	}
+	
+	
+	// A new employee with the fields not passed in by the REST caller set for demo purposes
+	private Employee newEmployee(String empno, String fName, String lName)
+	{
 		String midInit = "A";
 		String workdept = "E21";
 		String phoneNo = "1234";
 
 		// get today's date and set as hiredate
-		String hireDate= this.dtf.format(this.now);  
+		Date hireDate = Date.valueOf(this.now.toLocalDate());  
 
 		String job = "Engineer";
 		int edLevel =3 ;
@@ -160,53 +594,152 @@ public class EmployeeService
 		long bonus= 1000;
 		long comm = 1000;
 
-		// setup the SQL
-		String sql = "insert into emp (EMPNO, FIRSTNME, MIDINIT,LASTNAME,WORKDEPT,PHONENO,HIREDATE,JOB,EDLEVEL,SEX,BIRTHDATE,SALARY,BONUS,COMM) values(?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+		return new Employee(empno, fName, midInit, lName, workdept, phoneNo, 
+				hireDate, job, edLevel, sex, birthDate, salary, bonus, comm);
+	}
 
-		// do the insert
-		int numRows =  jdbcTemplate.update (sql,
-				empno,
-				fName,
-				midInit,
-				lName,
-				workdept,
-				phoneNo,
-				hireDate,
-				job,
-				edLevel,
-				sex,
-				birthDate,
-				salary,
-				bonus,
-				comm);
 
-		// numRows is the number of rows inserted - will be zero if the insert fails
-		if (numRows > 0) 
+	/**
+	 * Insert a list of employees using JDBC batching
+	 * 
+	 * The rows are sent to the database in chunks, each chunk is a single JDBC batch
+	 * and is committed in its own transaction. If a chunk fails it is rolled back 
+	 * and the remaining chunks are still attempted.
+	 * 
+	 * @param employees - the employees to insert, an employee number is generated for any without one
+	 * @return the outcome of each row, in the same order as the request
+	 */
+	public List<EmployeeBatchResult> addEmployees(String jdbcType, List<Employee> employees) 
+	{
+		DataSourceType type = selectDataSource(jdbcType, Operation.ADD_BATCH);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+		
+		for (Employee employee : employees)
 		{
-			return "employee " + empno + " added";
+			if (employee.getEmpNo() == null)
+			{
+				employee.setEmpNo(this.empnoAllocator.next(type));
+			}
 		}
 		
-		return "employee insert failed try again";
+		List<EmployeeBatchResult> results = new ArrayList<>(employees.size());
+		int chunkSize = Math.max(1, this.batchChunkSize);
+		
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.ADD_BATCH, type);
+		try
+		{
+			for (int start = 0; start < employees.size(); start += chunkSize)
+			{
+				addChunk(jdbcTemplate, type, transactionTemplate, employees, start, chunkSize, results);
+			}
+		}
+		finally
+		{
+			timer.stop();
+		}
+		
+		return results;
 	}
-
-
+	
+	
+	// Insert and commit one chunk of a batch insert, adding the outcome of each row to the results
+	private void addChunk(JdbcTemplate jdbcTemplate, DataSourceType type, TransactionTemplate transactionTemplate, 
+			List<Employee> employees, int start, int chunkSize, List<EmployeeBatchResult> results)
+	{
+		List<Employee> chunk = employees.subList(start, Math.min(start + chunkSize, employees.size()));
+		
+		try
+		{
+			// one batch, one commit - the write events are sent once the chunk commits
+			int[][] counts = transactionTemplate.execute(status -> 
+			{
+				int[][] chunkCounts = jdbcTemplate.batchUpdate(INSERT_SQL, chunk, chunk.size(), this::setInsertParameters);
+				for (int i = 0; i < chunk.size(); i++)
+				{
+					if (isApplied(chunkCounts[0][i]))
+					{
+						this.writeEvents.employeeAdded(type, chunk.get(i));
+					}
+				}
+				return chunkCounts;
+			});
+			
+			for (int i = 0; i < chunk.size(); i++)
+			{
+				String empNo = chunk.get(i).getEmpNo();
+				boolean added = isApplied(counts[0][i]);
+				results.add(new EmployeeBatchResult(start + i, empNo, added, 
+						added ? "employee " + empNo + " added" : "employee insert failed try again"));
+			}
+		}
+		catch (DataAccessException e)
+		{
+			// the whole chunk has been rolled back
+			for (int i = 0; i < chunk.size(); i++)
+			{
+				results.add(new EmployeeBatchResult(start + i, chunk.get(i).getEmpNo(), false, 
+						"batch rolled back: " + e.getMostSpecificCause().getMessage()));
+			}
+		}
+	}
+	
+	
+	// A batch update count is either the number of rows changed or, for some drivers, SUCCESS_NO_INFO
+	private static boolean isApplied(int count)
+	{
+		return count > 0 || count == Statement.SUCCESS_NO_INFO;
+	}
+	
+	
+	// Set the parameters of INSERT_SQL from an employee
+	private void setInsertParameters(PreparedStatement ps, Employee employee) throws SQLException
+	{
+		ps.setString(1, employee.getEmpNo());
+		ps.setString(2, employee.getFirstName());
+		ps.setString(3, employee.getMidinit());
+		ps.setString(4, employee.getLastName());
+		ps.setString(5, employee.getWorkdept());
+		ps.setString(6, employee.getPhoneNo());
+		ps.setDate(7, employee.getHireDate());
+		ps.setString(8, employee.getJob());
+		ps.setInt(9, employee.getEdLevel());
+		ps.setString(10, employee.getSex());
+		ps.setString(11, employee.getBirthDate());
+		ps.setLong(12, employee.getSalary());
+		ps.setLong(13, employee.getBonus());
+		ps.setLong(14, employee.getComm());
+	}
+	
+	
 	/**
 	 * @param empNo - employee number to be deleted
 	 * @return - a message to indicate success or failure of the delete operation
 	 */
 	public String deleteEmployee(String jdbcType, String empNo)
 	{
-		JdbcTemplate jdbcTemplate = selectJdbcTemplate(jdbcType);
+		DataSourceType type = selectDataSource(jdbcType, Operation.DELETE);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		// a salary still queued for the employee would otherwise be flushed after the delete
+		this.salaryWriteBehind.discard(type, empNo);
 		
-		// set up the delete SQL
-		String sql = "DELETE FROM emp WHERE empno =?";
-
 		// do the delete
-		int numRows = jdbcTemplate.update(sql, empNo);
+		int numRows;
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.DELETE, type);
+		try
+		{
+			numRows = jdbcTemplate.update(DELETE_SQL, empNo);
+		}
+		finally
+		{
+			timer.stop();
+		}
 
 		// numRows is the number of rows deleted - will be zero if the delete fails
 		if (numRows > 0) 
 		{
+			this.writeEvents.employeeDeleted(type, empNo);
 			return "employee " + empNo + " deleted";
 		}
 		
@@ -221,21 +754,284 @@ public class EmployeeService
 	 */
 	public String updateEmployee(String jdbcType, int newSalary, String empNo) 
 	{
-		JdbcTemplate jdbcTemplate = selectJdbcTemplate(jdbcType);
+		DataSourceType type = selectDataSource(jdbcType, Operation.UPDATE_SALARY);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		
+		// if write-behind is enabled, queue the update to be written with others in a batch
+		if (this.salaryWriteBehind.submit(type, empNo, newSalary))
+		{
+			return "employee " + empNo + " salary change to " + newSalary + " queued";
+		}
+		
+		// an older salary still queued must not be written over this one
+		this.salaryWriteBehind.discard(type, empNo);
 		
-		// set up the update SQL
-		String sql = "update emp set salary =? where empNo = ?";
-
 		// do the update
-		int numRows = jdbcTemplate.update(sql, newSalary, empNo);
+		int numRows;
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.UPDATE_SALARY, type);
+		try
+		{
+			numRows = jdbcTemplate.update(UPDATE_SALARY_SQL, newSalary, empNo);
+		}
+		finally
+		{
+			timer.stop();
+		}
 
 		// numRows is the number of rows updated - will be zero if the update fails   
 		if (numRows > 0) 
 		{
+			this.writeEvents.salaryUpdated(type, empNo, newSalary);
 			return "employee " + empNo + " salary changed to " + newSalary;
 		}
 		
 		return "employee update failed try again";
 	}
 	
+	
+	/**
+	 * Apply an ordered list of adds, salary updates and deletes as one unit of work
+	 * 
+	 * The operations run in order, in a single transaction on one connection. Each run of operations
+	 * of the same kind is sent as one JDBC batch, using the same SQL as addEmployee, updateEmployee
+	 * and deleteEmployee. An update or delete which finds no employee is reported as failed and the
+	 * rest are still committed, but if a statement fails all of the operations are rolled back.
+	 * 
+	 * If the driver doesn't report the rows changed by a batched update or delete, an update is run again
+	 * on its own to find out, a delete is reported as not known to have found the employee, and later
+	 * updates and deletes on that DataSource are run one statement at a time.
+	 * 
+	 * @param operations - the operations, an employee number is generated for any add without one
+	 * @return the outcome of each operation, in the same order as the request
+	 * @throws IllegalArgumentException if an operation is incomplete, or there are too many
+	 */
+	public List<EmployeeOperationResult> applyOperations(String jdbcType, List<EmployeeOperation> operations) 
+	{
+		if (operations.size() > this.unitOfWorkMaxOperations)
+		{
+			throw new IllegalArgumentException("At most " + this.unitOfWorkMaxOperations + " operations can be applied in one unit of work");
+		}
+		
+		// check every operation before any of them are run
+		String[] kinds = new String[operations.size()];
+		for (int i = 0; i < kinds.length; i++)
+		{
+			kinds[i] = kindOf(i, operations.get(i));
+		}
+		
+		if (operations.isEmpty())
+		{
+			return new ArrayList<>();
+		}
+		
+		DataSourceType type = selectDataSource(jdbcType, Operation.UNIT_OF_WORK);
+		JdbcTemplate jdbcTemplate = selectJdbcTemplate(type);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(this.transactionManager);
+		
+		// employee numbers are allocated before the transaction starts, as for a batch insert
+		Employee[] employees = new Employee[kinds.length];
+		for (int i = 0; i < kinds.length; i++)
+		{
+			EmployeeOperation operation = operations.get(i);
+			if (kinds[i] == EmployeeOperation.ADD)
+			{
+				String empNo = operation.getEmpNo() != null ? operation.getEmpNo() : this.empnoAllocator.next(type);
+				employees[i] = newEmployee(empNo, operation.getFirstName(), operation.getLastName());
+				if (operation.getSalary() != null)
+				{
+					employees[i].setSalary(operation.getSalary());
+				}
+			}
+		}
+		
+		List<EmployeeOperationResult> results;
+		EmployeeMetrics.Timer timer = this.metrics.start(Operation.UNIT_OF_WORK, type);
+		try
+		{
+			// one connection, one commit - the write events are sent once the unit of work commits
+			results = transactionTemplate.execute(status -> 
+			{
+				// an older salary still queued must not be written over these changes
+				for (int i = 0; i < kinds.length; i++)
+				{
+					if (kinds[i] != EmployeeOperation.ADD)
+					{
+						this.salaryWriteBehind.discard(type, operations.get(i).getEmpNo());
+					}
+				}
+				
+				return jdbcTemplate.execute(
+						(ConnectionCallback<List<EmployeeOperationResult>>) con -> applyRuns(con, type, operations, kinds, employees));
+			});
+		}
+		catch (DataAccessException | TransactionException e)
+		{
+			// every operation has been rolled back
+			results = new ArrayList<>(kinds.length);
+			for (int i = 0; i < kinds.length; i++)
+			{
+				String empNo = employees[i] != null ? employees[i].getEmpNo() : operations.get(i).getEmpNo();
+				results.add(new EmployeeOperationResult(i, kinds[i], empNo, false, "unit of work rolled back: " + e.getMostSpecificCause().getMessage()));
+			}
+		}
+		finally
+		{
+			timer.stop();
+		}
+		
+		return results;
+	}
+	
+	
+	// The kind of an operation, checking that it has the fields it needs
+	private static String kindOf(int index, EmployeeOperation operation)
+	{
+		String op = operation == null ? null : operation.getOp();
+		if (EmployeeOperation.ADD.equalsIgnoreCase(op))
+		{
+			if (operation.getFirstName() == null || operation.getLastName() == null)
+			{
+				throw new IllegalArgumentException("Operation " + index + ": add needs a firstName and lastName");
+			}
+			return EmployeeOperation.ADD;
+		}
+		if (EmployeeOperation.UPDATE.equalsIgnoreCase(op))
+		{
+			if (operation.getEmpNo() == null || operation.getSalary() == null)
+			{
+				throw new IllegalArgumentException("Operation " + index + ": update needs an empNo and salary");
+			}
+			return EmployeeOperation.UPDATE;
+		}
+		if (EmployeeOperation.DELETE.equalsIgnoreCase(op))
+		{
+			if (operation.getEmpNo() == null)
+			{
+				throw new IllegalArgumentException("Operation " + index + ": delete needs an empNo");
+			}
+			return EmployeeOperation.DELETE;
+		}
+		throw new IllegalArgumentException("Operation " + index + ": unknown op " + op + ", use add, update or delete");
+	}
+	
+	
+	// Run the operations on the connection of the unit of work, each run of the same kind as one batch
+	private List<EmployeeOperationResult> applyRuns(Connection con, DataSourceType type, List<EmployeeOperation> operations, 
+			String[] kinds, Employee[] employees) throws SQLException
+	{
+		List<EmployeeOperationResult> results = new ArrayList<>(kinds.length);
+		int start = 0;
+		while (start < kinds.length)
+		{
+			String kind = kinds[start];
+			int end = start + 1;
+			while (end < kinds.length && kinds[end] == kind)
+			{
+				end++;
+			}
+			
+			String sql = kind == EmployeeOperation.ADD ? INSERT_SQL : kind == EmployeeOperation.UPDATE ? UPDATE_SALARY_SQL : DELETE_SQL;
+			try (PreparedStatement ps = con.prepareStatement(sql))
+			{
+				int[] counts = new int[end - start];
+				if (kind == EmployeeOperation.ADD || !this.uncountedBatches.contains(type))
+				{
+					for (int i = start; i < end; i++)
+					{
+						setOperationParameters(ps, kind, operations.get(i), employees[i]);
+						ps.addBatch();
+					}
+					counts = ps.executeBatch();
+				}
+				else
+				{
+					for (int i = start; i < end; i++)
+					{
+						setOperationParameters(ps, kind, operations.get(i), employees[i]);
+						counts[i - start] = ps.executeUpdate();
+					}
+				}
+				
+				for (int i = start; i < end; i++)
+				{
+					int count = counts[i - start];
+					if (count == Statement.SUCCESS_NO_INFO && kind != EmployeeOperation.ADD)
+					{
+						// the driver doesn't say whether the employee was found, so stop batching updates and deletes,
+						// and run an update again - setting the same salary tells us whether the employee is there
+						this.uncountedBatches.add(type);
+						if (kind == EmployeeOperation.UPDATE)
+						{
+							setOperationParameters(ps, kind, operations.get(i), employees[i]);
+							count = ps.executeUpdate();
+						}
+					}
+					results.add(applied(type, i, kind, operations.get(i), employees[i], count));
+				}
+			}
+			start = end;
+		}
+		return results;
+	}
+	
+	
+	// Set the parameters of the statement for an operation
+	private void setOperationParameters(PreparedStatement ps, String kind, EmployeeOperation operation, Employee employee) throws SQLException
+	{
+		if (kind == EmployeeOperation.ADD)
+		{
+			setInsertParameters(ps, employee);
+		}
+		else if (kind == EmployeeOperation.UPDATE)
+		{
+			ps.setInt(1, operation.getSalary());
+			ps.setString(2, operation.getEmpNo());
+		}
+		else
+		{
+			ps.setString(1, operation.getEmpNo());
+		}
+	}
+	
+	
+	// The outcome of one operation of a unit of work from the rows it changed, with the same message as the single operation
+	private EmployeeOperationResult applied(DataSourceType type, int index, String kind, EmployeeOperation operation, 
+			Employee employee, int count)
+	{
+		if (kind == EmployeeOperation.ADD)
+		{
+			String empNo = employee.getEmpNo();
+			if (isApplied(count))
+			{
+				this.writeEvents.employeeAdded(type, employee);
+				return new EmployeeOperationResult(index, kind, empNo, true, "employee " + empNo + " added");
+			}
+			return new EmployeeOperationResult(index, kind, empNo, false, "employee insert failed try again");
+		}
+		
+		String empNo = operation.getEmpNo();
+		if (kind == EmployeeOperation.UPDATE)
+		{
+			int salary = operation.getSalary();
+			if (count > 0)
+			{
+				this.writeEvents.salaryUpdated(type, empNo, salary);
+				return new EmployeeOperationResult(index, kind, empNo, true, "employee " + empNo + " salary changed to " + salary);
+			}
+			return new EmployeeOperationResult(index, kind, empNo, false, "employee update failed try again");
+		}
+		
+		if (count == Statement.SUCCESS_NO_INFO)
+		{
+			// no event, as the employee may not have existed
+			return new EmployeeOperationResult(index, kind, empNo, false, "employee " + empNo + " delete sent, not known whether the employee was found");
+		}
+		if (count > 0)
+		{
+			this.writeEvents.employeeDeleted(type, empNo);
+			return new EmployeeOperationResult(index, kind, empNo, true, "employee " + empNo + " deleted");
+		}
+		return new EmployeeOperationResult(index, kind, empNo, false, "employee delete failed try again");
+	}
+	
 }
@@ -0,0 +1,693 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of the numeric and grouping columns of EMP, held column by column, for the /reports requests
+ *
+ * SALARY, BONUS, COMM and EDLEVEL are held in primitive arrays, and WORKDEPT and JOB as an index into a
+ * list of their distinct values, so a report is a scan of a few arrays rather than a query of every row.
+ * The snapshot is read on the first report, and again once it is older than maxAgeSeconds to pick up
+ * changes made outside this application. Changes made by EmployeeService are applied as they are committed.
+ *
+ * A report is kept until the next change which affects it, so asking for it again costs a map lookup.
+ */
+@Component
+public class EmployeeSnapshot implements EmployeeWriteListener
+{
+	@Value("${employee.snapshot.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.snapshot.jdbcType:type4}")
+	private String jdbcType;
+	
+	@Value("${employee.snapshot.maxAgeSeconds:300}")
+	private long maxAgeSeconds;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	private static final String SELECT_SQL = "SELECT EMPNO, WORKDEPT, JOB, EDLEVEL, SALARY, BONUS, COMM FROM emp";
+	
+	// the group for rows with a null WORKDEPT or JOB
+	private static final String NONE = "(none)";
+	
+	// the columns, null until the first report - guarded by this
+	private Columns columns;
+	private long loadedAt;
+	private boolean loading;
+	
+	// changes committed while the snapshot is being read, to apply once it has been read
+	private List<Consumer<Columns>> pending;
+	
+	// reports computed since the last change, by measure and group
+	private final Map<Measure, Map<GroupBy, Map<String, Summary>>> reports = new EnumMap<>(Measure.class);
+	
+	private long loads;
+	private long changes;
+	
+	
+	/**
+	 * The columns which can be reported on
+	 */
+	public enum Measure
+	{
+		SALARY, BONUS, COMM, EDLEVEL;
+		
+		/**
+		 * @param name - the column or property name, in any case
+		 * @return the measure
+		 * @throws IllegalArgumentException if there is no such measure
+		 */
+		public static Measure of(String name)
+		{
+			try
+			{
+				return valueOf(name.toUpperCase(Locale.ROOT));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown measure " + name + ", use one of " + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+			}
+		}
+	}
+	
+	
+	/**
+	 * The columns a report can be grouped by
+	 */
+	public enum GroupBy
+	{
+		ALL, WORKDEPT, JOB;
+		
+		/**
+		 * @param name - the column or property name, in any case
+		 * @return the grouping
+		 * @throws IllegalArgumentException if there is no such grouping
+		 */
+		public static GroupBy of(String name)
+		{
+			try
+			{
+				return valueOf(name.toUpperCase(Locale.ROOT));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IllegalArgumentException("Unknown grouping " + name + ", use one of " + Arrays.toString(values()).toLowerCase(Locale.ROOT));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Report on one column of the snapshot
+	 *
+	 * @param measure - the column to report on
+	 * @param groupBy - the column to group the rows by
+	 * @return the count, sum, average and percentiles of the measure for each group, in group order
+	 * @throws IllegalStateException if the snapshot is not enabled
+	 */
+	public Map<String, Summary> report(Measure measure, GroupBy groupBy)
+	{
+		if (!this.enabled)
+		{
+			throw new IllegalStateException("The employee snapshot is not enabled, set employee.snapshot.enabled=true");
+		}
+		
+		read();
+		synchronized (this)
+		{
+			Map<GroupBy, Map<String, Summary>> byGroup = this.reports.computeIfAbsent(measure, m -> new EnumMap<>(GroupBy.class));
+			Map<String, Summary> report = byGroup.get(groupBy);
+			if (report == null)
+			{
+				report = this.columns.report(measure, groupBy);
+				byGroup.put(groupBy, report);
+			}
+			return report;
+		}
+	}
+	
+	
+	// Read the columns if they haven't been read, or are too old
+	private void read()
+	{
+		synchronized (this)
+		{
+			while (true)
+			{
+				boolean fresh = System.nanoTime() - this.loadedAt < TimeUnit.SECONDS.toNanos(this.maxAgeSeconds);
+				if (this.columns != null && (fresh || this.loading))
+				{
+					// while another thread reloads, the old columns are used
+					return;
+				}
+				if (!this.loading)
+				{
+					break;
+				}
+				
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for the employee snapshot to be read", e);
+				}
+			}
+			
+			this.loading = true;
+			this.pending = new ArrayList<>();
+		}
+		
+		Columns loaded = null;
+		try
+		{
+			loaded = load();
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				if (loaded != null)
+				{
+					for (Consumer<Columns> change : this.pending)
+					{
+						change.accept(loaded);
+					}
+					this.columns = loaded;
+					this.loadedAt = System.nanoTime();
+					this.reports.clear();
+					this.loads++;
+				}
+				this.pending = null;
+				this.loading = false;
+				notifyAll();
+			}
+		}
+	}
+	
+	
+	// Read the columns from the database
+	private Columns load()
+	{
+		JdbcTemplate jdbcTemplate = DataSourceType.of(this.jdbcType) == DataSourceType.TYPE2 ? this.jdbcTemplateT2 : this.jdbcTemplateT4;
+		
+		Columns loaded = new Columns();
+		jdbcTemplate.query(SELECT_SQL, (RowCallbackHandler) rs -> loaded.put(rs.getString(1), rs.getString(2), rs.getString(3),
+				rs.getInt(4), rs.getLong(5), rs.getLong(6), rs.getLong(7)));
+		return loaded;
+	}
+	
+	
+	// Apply a committed change to the snapshot, and to one being read, and drop the reports it affects - all of them if measure is null
+	private synchronized void apply(Consumer<Columns> change, Measure measure)
+	{
+		if (!this.enabled)
+		{
+			return;
+		}
+		
+		if (this.pending != null)
+		{
+			this.pending.add(change);
+		}
+		if (this.columns != null)
+		{
+			change.accept(this.columns);
+			if (measure == null)
+			{
+				this.reports.clear();
+			}
+			else
+			{
+				this.reports.remove(measure);
+			}
+			this.changes++;
+		}
+	}
+	
+	
+	@Override
+	public void employeeAdded(DataSourceType type, Employee employee)
+	{
+		apply(columns -> columns.put(employee.getEmpNo(), employee.getWorkdept(), employee.getJob(),
+				employee.getEdLevel(), employee.getSalary(), employee.getBonus(), employee.getComm()), null);
+	}
+	
+	
+	@Override
+	public void employeeDeleted(DataSourceType type, String empNo)
+	{
+		apply(columns -> columns.remove(empNo), null);
+	}
+	
+	
+	@Override
+	public void salaryUpdated(DataSourceType type, String empNo, long salary)
+	{
+		apply(columns -> columns.setSalary(empNo, salary), Measure.SALARY);
+	}
+	
+	
+	/**
+	 * @return the size and age of the snapshot, and the number of times it has been read and changed
+	 */
+	public synchronized Statistics getStatistics()
+	{
+		boolean loaded = this.columns != null;
+		return new Statistics(this.enabled, loaded ? this.columns.size : 0,
+				loaded ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.loadedAt) : -1, this.loads, this.changes);
+	}
+	
+	
+	// The columns of every row, with the rows kept packed at the start of each array
+	private static class Columns
+	{
+		String[] empNo = new String[1024];
+		int[] workdept = new int[1024];
+		int[] job = new int[1024];
+		int[] edLevel = new int[1024];
+		long[] salary = new long[1024];
+		long[] bonus = new long[1024];
+		long[] comm = new long[1024];
+		int size;
+		
+		// row of each employee number
+		final Map<String, Integer> rows = new HashMap<>();
+		
+		// distinct WORKDEPT and JOB values, a row holds the index of its value
+		final Codes workdepts = new Codes();
+		final Codes jobs = new Codes();
+		
+		// Add or replace the row for an employee
+		void put(String empNo, String workdept, String job, int edLevel, long salary, long bonus, long comm)
+		{
+			Integer existing = this.rows.get(empNo);
+			int row;
+			if (existing != null)
+			{
+				row = existing;
+			}
+			else
+			{
+				if (this.size == this.empNo.length)
+				{
+					grow();
+				}
+				row = this.size++;
+				this.rows.put(empNo, row);
+			}
+			
+			this.empNo[row] = empNo;
+			this.workdept[row] = this.workdepts.encode(workdept);
+			this.job[row] = this.jobs.encode(job);
+			this.edLevel[row] = edLevel;
+			this.salary[row] = salary;
+			this.bonus[row] = bonus;
+			this.comm[row] = comm;
+		}
+		
+		// Remove the row for an employee, moving the last row into its place
+		void remove(String empNo)
+		{
+			Integer row = this.rows.remove(empNo);
+			if (row == null)
+			{
+				return;
+			}
+			
+			int last = --this.size;
+			if (row != last)
+			{
+				this.empNo[row] = this.empNo[last];
+				this.workdept[row] = this.workdept[last];
+				this.job[row] = this.job[last];
+				this.edLevel[row] = this.edLevel[last];
+				this.salary[row] = this.salary[last];
+				this.bonus[row] = this.bonus[last];
+				this.comm[row] = this.comm[last];
+				this.rows.put(this.empNo[row], row);
+			}
+			this.empNo[last] = null;
+		}
+		
+		void setSalary(String empNo, long salary)
+		{
+			Integer row = this.rows.get(empNo);
+			if (row != null)
+			{
+				this.salary[row] = salary;
+			}
+		}
+		
+		private void grow()
+		{
+			int length = this.empNo.length * 2;
+			this.empNo = Arrays.copyOf(this.empNo, length);
+			this.workdept = Arrays.copyOf(this.workdept, length);
+			this.job = Arrays.copyOf(this.job, length);
+			this.edLevel = Arrays.copyOf(this.edLevel, length);
+			this.salary = Arrays.copyOf(this.salary, length);
+			this.bonus = Arrays.copyOf(this.bonus, length);
+			this.comm = Arrays.copyOf(this.comm, length);
+		}
+		
+		// Summarise a measure for each group - the values are gathered group by group, then the percentiles of each group are selected
+		Map<String, Summary> report(Measure measure, GroupBy groupBy)
+		{
+			int[] groupOf = groupBy == GroupBy.WORKDEPT ? this.workdept : groupBy == GroupBy.JOB ? this.job : null;
+			Codes codes = groupBy == GroupBy.WORKDEPT ? this.workdepts : groupBy == GroupBy.JOB ? this.jobs : null;
+			int groups = codes == null ? 1 : codes.size();
+			
+			// where each group starts in the gathered values
+			int[] start = new int[groups + 1];
+			for (int row = 0; row < this.size; row++)
+			{
+				start[(groupOf == null ? 0 : groupOf[row]) + 1]++;
+			}
+			for (int group = 0; group < groups; group++)
+			{
+				start[group + 1] += start[group];
+			}
+			
+			long[] values = new long[this.size];
+			int[] next = Arrays.copyOf(start, groups);
+			for (int row = 0; row < this.size; row++)
+			{
+				values[next[groupOf == null ? 0 : groupOf[row]]++] = value(measure, row);
+			}
+			
+			Map<String, Summary> report = new TreeMap<>();
+			for (int group = 0; group < groups; group++)
+			{
+				if (start[group + 1] > start[group])
+				{
+					report.put(codes == null ? "all" : codes.decode(group), new Summary(values, start[group], start[group + 1]));
+				}
+			}
+			return Collections.unmodifiableMap(report);
+		}
+		
+		private long value(Measure measure, int row)
+		{
+			if (measure == Measure.SALARY)
+			{
+				return this.salary[row];
+			}
+			if (measure == Measure.BONUS)
+			{
+				return this.bonus[row];
+			}
+			if (measure == Measure.COMM)
+			{
+				return this.comm[row];
+			}
+			return this.edLevel[row];
+		}
+	}
+	
+	
+	// The distinct values of a column, numbered in the order they were first seen
+	private static class Codes
+	{
+		private final Map<String, Integer> codes = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		
+		int encode(String value)
+		{
+			String key = value == null ? NONE : value;
+			Integer code = this.codes.get(key);
+			if (code == null)
+			{
+				code = this.values.size();
+				this.codes.put(key, code);
+				this.values.add(key);
+			}
+			return code;
+		}
+		
+		String decode(int code)
+		{
+			return this.values.get(code);
+		}
+		
+		int size()
+		{
+			return this.values.size();
+		}
+	}
+	
+	
+	/**
+	 * The count, sum, average and percentiles of a measure for one group
+	 */
+	public static class Summary
+	{
+		private final int count;
+		private final long sum;
+		private final long min;
+		private final long max;
+		private final long p50;
+		private final long p90;
+		private final long p99;
+		
+		// from the values between from and to, which are reordered
+		Summary(long[] values, int from, int to)
+		{
+			long total = 0;
+			long smallest = Long.MAX_VALUE;
+			long largest = Long.MIN_VALUE;
+			for (int i = from; i < to; i++)
+			{
+				total += values[i];
+				smallest = Math.min(smallest, values[i]);
+				largest = Math.max(largest, values[i]);
+			}
+			
+			this.count = to - from;
+			this.sum = total;
+			this.min = smallest;
+			this.max = largest;
+			
+			// each selection leaves the larger values above it, so the next only has to look there
+			int i50 = rank(from, to, 0.50);
+			int i90 = rank(from, to, 0.90);
+			int i99 = rank(from, to, 0.99);
+			this.p50 = select(values, from, to, i50);
+			this.p90 = select(values, i50, to, i90);
+			this.p99 = select(values, i90, to, i99);
+		}
+		
+		// Index the value of a percentile would have if the values were sorted, by nearest rank
+		private static int rank(int from, int to, double percentile)
+		{
+			int rank = (int) Math.ceil(percentile * (to - from));
+			return from + Math.max(0, rank - 1);
+		}
+		
+		// Move the value which belongs at index in sorted order there, with smaller values before it and larger after
+		private static long select(long[] values, int from, int to, int index)
+		{
+			int low = from;
+			int high = to - 1;
+			while (low < high)
+			{
+				long pivot = values[(low + high) >>> 1];
+				int i = low;
+				int j = high;
+				while (i <= j)
+				{
+					while (values[i] < pivot)
+					{
+						i++;
+					}
+					while (values[j] > pivot)
+					{
+						j--;
+					}
+					if (i <= j)
+					{
+						long swap = values[i];
+						values[i++] = values[j];
+						values[j--] = swap;
+					}
+				}
+				
+				if (index <= j)
+				{
+					high = j;
+				}
+				else if (index >= i)
+				{
+					low = i;
+				}
+				else
+				{
+					break;
+				}
+			}
+			return values[index];
+		}
+		
+		/**
+		 * @return the number of employees in the group
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * @return the total of the measure
+		 */
+		public long getSum()
+		{
+			return sum;
+		}
+		
+		/**
+		 * @return the mean of the measure
+		 */
+		public double getAverage()
+		{
+			return (double) sum / count;
+		}
+		
+		/**
+		 * @return the smallest value
+		 */
+		public long getMin()
+		{
+			return min;
+		}
+		
+		/**
+		 * @return the largest value
+		 */
+		public long getMax()
+		{
+			return max;
+		}
+		
+		/**
+		 * @return the median
+		 */
+		public long getP50()
+		{
+			return p50;
+		}
+		
+		/**
+		 * @return the 90th percentile
+		 */
+		public long getP90()
+		{
+			return p90;
+		}
+		
+		/**
+		 * @return the 99th percentile
+		 */
+		public long getP99()
+		{
+			return p99;
+		}
+	}
+	
+	
+	/**
+	 * Snapshot counters
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final int rows;
+		private final long ageMillis;
+		private final long loads;
+		private final long changes;
+		
+		Statistics(boolean enabled, int rows, long ageMillis, long loads, long changes)
+		{
+			this.enabled = enabled;
+			this.rows = rows;
+			this.ageMillis = ageMillis;
+			this.loads = loads;
+			this.changes = changes;
+		}
+		
+		/**
+		 * @return true if the snapshot is enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+		
+		/**
+		 * @return the number of employees in the snapshot
+		 */
+		public int getRows()
+		{
+			return rows;
+		}
+		
+		/**
+		 * @return the time since the snapshot was read from the database, or -1 if it hasn't been
+		 */
+		public long getAgeMillis()
+		{
+			return ageMillis;
+		}
+		
+		/**
+		 * @return the number of times the snapshot has been read from the database
+		 */
+		public long getLoads()
+		{
+			return loads;
+		}
+		
+		/**
+		 * @return the number of changes made by this application which have been applied to the snapshot
+		 */
+		public long getChanges()
+		{
+			return changes;
+		}
+	}
+}
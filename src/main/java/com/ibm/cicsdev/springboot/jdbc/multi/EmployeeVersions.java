@@ -0,0 +1,196 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+
+/**
+ * Version counters for the EMP table, used to answer repeated reads with HTTP 304 Not Modified
+ *
+ * Each DataSource has a version for the whole table, and one for each of a fixed number of stripes of
+ * employee numbers. Changes made by EmployeeService advance them as soon as they are committed, on both
+ * DataSources as they usually read the same table. Two employee numbers in the same stripe share a version,
+ * which only costs an unnecessary read when one of them changes.
+ *
+ * The ETag sent with a response is made from the version, the request parameters and Accept header,
+ * and the current period of employee.etag.maxStaleSeconds, so changes made outside this application
+ * are picked up within that time. A request whose If-None-Match matches the current ETag is answered
+ * with 304 before Db2 is queried.
+ */
+@Component
+public class EmployeeVersions implements EmployeeWriteListener
+{
+	@Value("${employee.etag.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.etag.maxStaleSeconds:30}")
+	private long maxStaleSeconds;
+	
+	// Stripes of employee numbers with their own version, for each DataSource
+	private static final int STRIPES = 4096;
+	
+	// Identifies this run of the application, as the versions start again from zero after a restart
+	private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+	
+	private final AtomicLong[] tableVersions = new AtomicLong[DataSourceType.values().length];
+	private final AtomicLongArray[] empNoVersions = new AtomicLongArray[DataSourceType.values().length];
+	
+	private final LongAdder tagged = new LongAdder();
+	private final LongAdder notModified = new LongAdder();
+	
+	
+	public EmployeeVersions()
+	{
+		for (int i = 0; i < this.tableVersions.length; i++)
+		{
+			this.tableVersions[i] = new AtomicLong();
+			this.empNoVersions[i] = new AtomicLongArray(STRIPES);
+		}
+	}
+	
+	
+	/**
+	 * Set the ETag of the response, and check it against the If-None-Match header of the request
+	 *
+	 * @param request - the request, which is marked as not modified if the ETag matches
+	 * @param jdbcType - the jdbcType from the request URL
+	 * @param empNo - the employee number read, or null for a read of the whole table
+	 * @return true if the client already has the current response, and the handler should return null
+	 */
+	public boolean checkNotModified(ServletWebRequest request, String jdbcType, String empNo)
+	{
+		if (!this.enabled || this.maxStaleSeconds <= 0)
+		{
+			return false;
+		}
+		
+		// auto reads from either DataSource, and both are advanced by every change
+		int type = DataSourceType.of(jdbcType).ordinal();
+		long version = empNo == null ? this.tableVersions[type].get() : this.empNoVersions[type].get(stripe(empNo));
+		long period = System.currentTimeMillis() / TimeUnit.SECONDS.toMillis(this.maxStaleSeconds);
+		
+		// the same version gives a different response for different parameters or content types
+		String variant = jdbcType + '?' + request.getRequest().getQueryString() + '|' + request.getHeader(HttpHeaders.ACCEPT);
+		
+		String etag = '"' + this.epoch + '-' + Long.toString(version, 36) + '-' + Long.toString(period, 36)
+				+ '-' + Integer.toHexString(variant.hashCode()) + '"';
+		
+		if (request.checkNotModified(etag))
+		{
+			this.notModified.increment();
+			return true;
+		}
+		
+		this.tagged.increment();
+		return false;
+	}
+	
+	
+	// The stripe holding the version of an employee number
+	private static int stripe(String empNo)
+	{
+		int h = empNo.trim().hashCode();
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+	
+	
+	// Advance the versions of the table and of the employee number, on both DataSources
+	private void advance(String empNo)
+	{
+		int stripe = stripe(empNo);
+		for (int i = 0; i < this.tableVersions.length; i++)
+		{
+			this.empNoVersions[i].incrementAndGet(stripe);
+			this.tableVersions[i].incrementAndGet();
+		}
+	}
+	
+	
+	@Override
+	public void employeeAdded(DataSourceType type, Employee employee)
+	{
+		// an earlier lookup may have found no employee
+		advance(employee.getEmpNo());
+	}
+	
+	
+	@Override
+	public void employeeDeleted(DataSourceType type, String empNo)
+	{
+		advance(empNo);
+	}
+	
+	
+	@Override
+	public void salaryUpdated(DataSourceType type, String empNo, long salary)
+	{
+		advance(empNo);
+	}
+	
+	
+	/**
+	 * @return the number of responses tagged, and of requests answered with 304
+	 */
+	public Statistics getStatistics()
+	{
+		return new Statistics(this.enabled, this.tagged.sum(), this.notModified.sum());
+	}
+	
+	
+	/**
+	 * Conditional GET counters
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final long tagged;
+		private final long notModified;
+		
+		Statistics(boolean enabled, long tagged, long notModified)
+		{
+			this.enabled = enabled;
+			this.tagged = tagged;
+			this.notModified = notModified;
+		}
+		
+		/**
+		 * @return true if ETags are enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+		
+		/**
+		 * @return the number of responses sent in full with an ETag
+		 */
+		public long getTagged()
+		{
+			return tagged;
+		}
+		
+		/**
+		 * @return the number of requests answered with 304 Not Modified, without reading Db2
+		 */
+		public long getNotModified()
+		{
+			return notModified;
+		}
+	}
+}
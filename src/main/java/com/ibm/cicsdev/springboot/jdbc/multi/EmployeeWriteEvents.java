@@ -0,0 +1,89 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Passes changes made to the EMP table on to every EmployeeWriteListener bean
+ * 
+ * When the change is made inside a transaction (for example in one of the @Transactional *Tx endpoints)
+ * the listeners are called after the transaction commits, and not at all if it rolls back. 
+ * Otherwise they are called straight away.
+ */
+@Component
+public class EmployeeWriteEvents 
+{
+	@Autowired(required = false)
+	private List<EmployeeWriteListener> listeners = Collections.emptyList();
+	
+	
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param employee - the employee which has been inserted
+	 */
+	public void employeeAdded(DataSourceType type, Employee employee)
+	{
+		afterCommit(() -> this.listeners.forEach(listener -> listener.employeeAdded(type, employee)));
+	}
+	
+	
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param empNo - the employee number which has been deleted
+	 */
+	public void employeeDeleted(DataSourceType type, String empNo)
+	{
+		afterCommit(() -> this.listeners.forEach(listener -> listener.employeeDeleted(type, empNo)));
+	}
+	
+	
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param empNo - the employee number which has been updated
+	 * @param salary - the new salary
+	 */
+	public void salaryUpdated(DataSourceType type, String empNo, long salary)
+	{
+		afterCommit(() -> this.listeners.forEach(listener -> listener.salaryUpdated(type, empNo, salary)));
+	}
+	
+	
+	// Run the action when the current transaction commits, or now if there is no transaction
+	private void afterCommit(Runnable action)
+	{
+		if (this.listeners.isEmpty())
+		{
+			return;
+		}
+		
+		if (TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() 
+			{
+				@Override
+				public void afterCommit() 
+				{
+					action.run();
+				}
+			});
+			return;
+		}
+		
+		action.run();
+	}
+}
@@ -0,0 +1,48 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * Interface for components which need to know when the EMP table has been changed by this application
+ * 
+ * Listeners are called by EmployeeWriteEvents once the change has been committed. 
+ * If the change is part of a transaction which rolls back, they are not called at all.
+ */
+public interface EmployeeWriteListener 
+{
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param employee - the employee which has been inserted
+	 */
+	default void employeeAdded(DataSourceType type, Employee employee)
+	{
+	}
+	
+	
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param empNo - the employee number which has been deleted
+	 */
+	default void employeeDeleted(DataSourceType type, String empNo)
+	{
+	}
+	
+	
+	/**
+	 * @param type - the DataSource used to make the change
+	 * @param empNo - the employee number which has been updated
+	 * @param salary - the new salary
+	 */
+	default void salaryUpdated(DataSourceType type, String empNo, long salary)
+	{
+	}
+}
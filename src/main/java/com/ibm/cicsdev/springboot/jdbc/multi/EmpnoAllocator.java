@@ -0,0 +1,29 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * Interface for the components which choose the employee number of a new employee
+ * 
+ * The allocator is selected with the employee.empno.allocator property:
+ *    random   - a random number, which can collide with an existing employee (RandomEmpnoAllocator)
+ *    sequence - blocks of numbers reserved from a Db2 sequence (SequenceEmpnoAllocator)
+ *    table    - blocks of numbers reserved from a high-water-mark table (TableEmpnoAllocator)
+ */
+public interface EmpnoAllocator 
+{
+	/**
+	 * @param type - the DataSource the employee will be inserted with
+	 * @return a six digit employee number
+	 */
+	String next(DataSourceType type);
+}
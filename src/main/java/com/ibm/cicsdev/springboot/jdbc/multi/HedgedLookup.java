@@ -0,0 +1,484 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * Optional hedging of single employee lookups across the two DataSources
+ *
+ * When enabled, a lookup which has not answered within the configured percentile of the times taken
+ * by earlier lookups on the database (not those answered by EmployeeCache) is sent again over the other
+ * DataSource. Whichever answers first is returned at once, and the statement still running on the other is
+ * cancelled. Rows returned by the other DataSource are not cached.
+ *
+ * Both attempts run on their own threads while the caller waits for the first answer, so the connection
+ * and row mapping time of a hedged lookup is counted as execution time in EmployeeMetrics.
+ *
+ * Each lookup earns a fraction of a hedge, and a hedge can only be sent while one has been earned,
+ * so hedging adds at most that fraction to the load on the database - even when one DataSource is down
+ * and every lookup on it is slow. Lookups inside a transaction are never hedged.
+ */
+@Component
+public class HedgedLookup
+{
+	private static final Logger LOG = LoggerFactory.getLogger(HedgedLookup.class);
+	
+	// a hedge is one token, in thousandths
+	private static final long TOKEN = 1000;
+	
+	// hedges which can be saved up while lookups are fast
+	private static final long MAX_TOKENS = 10 * TOKEN;
+	
+	// lookups needed before the percentile is trusted
+	private static final long MIN_SAMPLES = 100;
+	
+	// how often the delay is recalculated from the latency histogram
+	private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+	
+	@Value("${employee.hedge.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.hedge.percentile:0.95}")
+	private double percentile;
+	
+	@Value("${employee.hedge.minDelayMillis:10}")
+	private long minDelayMillis;
+	
+	@Value("${employee.hedge.maxRatio:0.1}")
+	private double maxRatio;
+	
+	@Value("${employee.hedge.threads:4}")
+	private int threads;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	@Autowired
+	private EmployeeCache employeeCache;
+	
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	private ScheduledThreadPoolExecutor scheduler;
+	
+	// runs the first attempt of each lookup, one thread for each caller waiting
+	private ThreadPoolExecutor executor;
+	
+	// hedges earned, in thousandths
+	private final AtomicLong tokens = new AtomicLong(MAX_TOKENS);
+	
+	// time taken by the lookups sent to each DataSource first - these are all cache misses, so unlike the
+	// SELECT_WHERE_EMPNO latency they are not pulled down by lookups answered from the cache
+	private final LatencyHistogram[] lookupTimes = new LatencyHistogram[DataSourceType.values().length];
+	
+	// delay before hedging a lookup on each DataSource, and when it was calculated
+	private final AtomicLong[] delayNanos = new AtomicLong[DataSourceType.values().length];
+	private final AtomicLong[] delayCalculated = new AtomicLong[DataSourceType.values().length];
+	
+	private final LongAdder lookups = new LongAdder();
+	private final LongAdder hedged = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder overBudget = new LongAdder();
+	
+	
+	public HedgedLookup()
+	{
+		for (int i = 0; i < this.delayNanos.length; i++)
+		{
+			this.lookupTimes[i] = new LatencyHistogram();
+			this.delayNanos[i] = new AtomicLong();
+			this.delayCalculated[i] = new AtomicLong(System.nanoTime() - DELAY_REFRESH_NANOS);
+		}
+	}
+	
+	
+	// Lookups and hedges run on their own threads, which must be CICS enabled to use the type 2 DataSource
+	@PostConstruct
+	void start()
+	{
+		if (this.enabled)
+		{
+			this.scheduler = new ScheduledThreadPoolExecutor(Math.max(1, this.threads), this.threadFactory);
+			this.scheduler.setRemoveOnCancelPolicy(true);
+			this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), this.threadFactory);
+		}
+	}
+	
+	
+	@PreDestroy
+	void stop()
+	{
+		if (this.scheduler != null)
+		{
+			this.scheduler.shutdownNow();
+			this.executor.shutdownNow();
+		}
+	}
+	
+	
+	/**
+	 * Run a single employee lookup, hedging it on the other DataSource if it is slow
+	 *
+	 * @param type - the DataSource to use first
+	 * @param sql - the query, with the employee number as its only parameter
+	 * @param empNo - the employee number
+	 * @param rowMapper - maps the rows when the lookup cannot be hedged
+	 * @return the rows from whichever DataSource answered first
+	 */
+	public List<Employee> query(DataSourceType type, String sql, String empNo, RowMapper<Employee> rowMapper)
+	{
+		if (this.scheduler == null || TransactionSynchronizationManager.isActualTransactionActive())
+		{
+			return selectJdbcTemplate(type).query(sql, rowMapper, empNo);
+		}
+		
+		this.lookups.increment();
+		earn();
+		
+		Race race = new Race();
+		DataSourceType other = type == DataSourceType.TYPE2 ? DataSourceType.TYPE4 : DataSourceType.TYPE2;
+		race.hedgeTask = this.scheduler.schedule(() -> hedge(race, other, sql, empNo), delay(type), TimeUnit.NANOSECONDS);
+		this.executor.execute(() -> primary(race, type, sql, empNo));
+		
+		try
+		{
+			List<Employee> employees = race.result.join();
+			if (race.winner() == Race.HEDGE)
+			{
+				// the hedge answered first, with rows from the other DataSource which aren't cached for this one
+				this.employeeCache.doNotCache();
+			}
+			return employees;
+		}
+		catch (CompletionException e)
+		{
+			if (e.getCause() instanceof Error)
+			{
+				throw (Error) e.getCause();
+			}
+			throw (RuntimeException) e.getCause();
+		}
+	}
+	
+	
+	// Send the lookup to the first DataSource
+	private void primary(Race race, DataSourceType type, String sql, String empNo)
+	{
+		long start = System.nanoTime();
+		try
+		{
+			List<Employee> employees = selectJdbcTemplate(type).query(race.primary.creator(sql, empNo), new EmployeeRowMapper());
+			if (race.win(Race.PRIMARY))
+			{
+				race.hedgeTask.cancel(false);
+				race.hedge.cancel();
+				race.result.complete(employees);
+			}
+		}
+		catch (RuntimeException | Error e)
+		{
+			// a failure only counts if the hedge has not already answered
+			if (race.win(Race.PRIMARY))
+			{
+				race.hedgeTask.cancel(false);
+				race.hedge.cancel();
+				race.result.completeExceptionally(e);
+			}
+		}
+		finally
+		{
+			this.lookupTimes[type.ordinal()].record(System.nanoTime() - start);
+		}
+	}
+	
+	
+	// Send the lookup to the other DataSource, if it is still needed and the budget allows
+	private void hedge(Race race, DataSourceType type, String sql, String empNo)
+	{
+		if (race.isDecided())
+		{
+			return;
+		}
+		
+		if (!spend())
+		{
+			this.overBudget.increment();
+			return;
+		}
+		
+		this.hedged.increment();
+		try
+		{
+			List<Employee> employees = selectJdbcTemplate(type).query(race.hedge.creator(sql, empNo), new EmployeeRowMapper());
+			if (race.win(Race.HEDGE))
+			{
+				race.primary.cancel();
+				race.result.complete(employees);
+				this.hedgeWins.increment();
+			}
+		}
+		catch (DataAccessException e)
+		{
+			// the first DataSource is still running the lookup, so just let it finish
+			LOG.debug("Hedged lookup of employee {} on {} failed", empNo, type, e);
+		}
+	}
+	
+	
+	// Each lookup earns maxRatio of a hedge
+	private void earn()
+	{
+		long earned = (long) (this.maxRatio * TOKEN);
+		this.tokens.updateAndGet(t -> Math.min(MAX_TOKENS, t + earned));
+	}
+	
+	
+	// Take one hedge from the budget, if there is one
+	private boolean spend()
+	{
+		long current;
+		do
+		{
+			current = this.tokens.get();
+			if (current < TOKEN)
+			{
+				return false;
+			}
+		}
+		while (!this.tokens.compareAndSet(current, current - TOKEN));
+		return true;
+	}
+	
+	
+	// The configured percentile of the lookup times on a DataSource, recalculated once a second
+	private long delay(DataSourceType type)
+	{
+		int index = type.ordinal();
+		long now = System.nanoTime();
+		long calculated = this.delayCalculated[index].get();
+		if (now - calculated >= DELAY_REFRESH_NANOS && this.delayCalculated[index].compareAndSet(calculated, now))
+		{
+			long delay = TimeUnit.MILLISECONDS.toNanos(this.minDelayMillis);
+			LatencyHistogram histogram = this.lookupTimes[index];
+			if (histogram.snapshot().getCount() >= MIN_SAMPLES)
+			{
+				delay = Math.max(delay, histogram.percentile(this.percentile));
+			}
+			this.delayNanos[index].set(delay);
+		}
+		return this.delayNanos[index].get();
+	}
+	
+	
+	// Select the jdbcTemplate for a DataSource
+	private JdbcTemplate selectJdbcTemplate(DataSourceType type)
+	{
+		return type == DataSourceType.TYPE2 ? this.jdbcTemplateT2 : this.jdbcTemplateT4;
+	}
+	
+	
+	/**
+	 * @return the hedging counters
+	 */
+	public Statistics getStatistics()
+	{
+		Map<DataSourceType, Long> delays = new EnumMap<>(DataSourceType.class);
+		for (DataSourceType type : DataSourceType.values())
+		{
+			delays.put(type, TimeUnit.NANOSECONDS.toMicros(this.delayNanos[type.ordinal()].get()));
+		}
+		return new Statistics(this.enabled, this.lookups.sum(), this.hedged.sum(), this.hedgeWins.sum(), this.overBudget.sum(), delays);
+	}
+	
+	
+	// One lookup, sent to the first DataSource and possibly hedged on the other
+	private static class Race
+	{
+		static final int PRIMARY = 1;
+		static final int HEDGE = 2;
+		
+		final Attempt primary = new Attempt();
+		final Attempt hedge = new Attempt();
+		final CompletableFuture<List<Employee>> result = new CompletableFuture<>();
+		
+		// the scheduled hedge, cancelled if the first DataSource answers before it runs
+		volatile ScheduledFuture<?> hedgeTask;
+		
+		// which attempt answered first, 0 until one does
+		private final AtomicInteger winner = new AtomicInteger();
+		
+		boolean win(int attempt)
+		{
+			return this.winner.compareAndSet(0, attempt);
+		}
+		
+		int winner()
+		{
+			return this.winner.get();
+		}
+		
+		boolean isDecided()
+		{
+			return this.winner.get() != 0;
+		}
+	}
+	
+	
+	// The statement run by one side of a race, so that the other side can cancel it
+	private static class Attempt
+	{
+		private volatile PreparedStatement statement;
+		private volatile boolean cancelled;
+		
+		PreparedStatementCreator creator(String sql, String empNo)
+		{
+			return con ->
+			{
+				PreparedStatement ps = con.prepareStatement(sql);
+				ps.setString(1, empNo);
+				this.statement = ps;
+				if (this.cancelled)
+				{
+					ps.close();
+					throw new SQLException("Lookup of employee " + empNo + " cancelled, the other DataSource answered first");
+				}
+				return ps;
+			};
+		}
+		
+		void cancel()
+		{
+			this.cancelled = true;
+			PreparedStatement ps = this.statement;
+			if (ps != null)
+			{
+				try
+				{
+					ps.cancel();
+				}
+				catch (SQLException e)
+				{
+					// the statement has already completed
+					LOG.trace("Cancel failed", e);
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Hedging counters
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final long lookups;
+		private final long hedged;
+		private final long hedgeWins;
+		private final long overBudget;
+		private final Map<DataSourceType, Long> delayMicros;
+		
+		Statistics(boolean enabled, long lookups, long hedged, long hedgeWins, long overBudget, Map<DataSourceType, Long> delayMicros)
+		{
+			this.enabled = enabled;
+			this.lookups = lookups;
+			this.hedged = hedged;
+			this.hedgeWins = hedgeWins;
+			this.overBudget = overBudget;
+			this.delayMicros = delayMicros;
+		}
+		
+		/**
+		 * @return true if hedging is enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+		
+		/**
+		 * @return the number of lookups which could have been hedged
+		 */
+		public long getLookups()
+		{
+			return lookups;
+		}
+		
+		/**
+		 * @return the number of lookups sent to the other DataSource
+		 */
+		public long getHedged()
+		{
+			return hedged;
+		}
+		
+		/**
+		 * @return the number of hedged lookups which answered first
+		 */
+		public long getHedgeWins()
+		{
+			return hedgeWins;
+		}
+		
+		/**
+		 * @return the number of slow lookups which were not hedged, because the budget was used up
+		 */
+		public long getOverBudget()
+		{
+			return overBudget;
+		}
+		
+		/**
+		 * @return the current delay before a lookup on each DataSource is hedged
+		 */
+		public Map<DataSourceType, Long> getDelayMicros()
+		{
+			return delayMicros;
+		}
+	}
+}
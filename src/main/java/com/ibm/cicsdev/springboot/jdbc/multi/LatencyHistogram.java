@@ -0,0 +1,228 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Lock-free histogram of latencies in nanoseconds
+ * 
+ * Values are counted in log-linear buckets - each power of two is split into 8 buckets, 
+ * so a percentile is accurate to within 12.5%. Recording a value does not allocate.
+ */
+public class LatencyHistogram 
+{
+	// 8 buckets per power of two, enough for any positive long
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	
+	// count, sum and max are kept in the same array so a snapshot touches one object
+	private static final int COUNT = 0;
+	private static final int SUM = 1;
+	private static final int MAX = 2;
+	private final AtomicLongArray totals = new AtomicLongArray(3);
+	
+	
+	/**
+	 * @param nanos - the latency to record
+	 */
+	public void record(long nanos)
+	{
+		long value = Math.max(0, nanos);
+		
+		this.counts.incrementAndGet(bucket(value));
+		this.totals.incrementAndGet(COUNT);
+		this.totals.addAndGet(SUM, value);
+		
+		long max;
+		while (value > (max = this.totals.get(MAX)) && !this.totals.compareAndSet(MAX, max, value))
+		{
+			// retry
+		}
+	}
+	
+	
+	/**
+	 * @return the count, mean, max and percentiles recorded so far
+	 */
+	public Snapshot snapshot()
+	{
+		long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			copy[i] = this.counts.get(i);
+			count += copy[i];
+		}
+		
+		return new Snapshot(count, 
+				count == 0 ? 0 : this.totals.get(SUM) / Math.max(1, this.totals.get(COUNT)),
+				percentile(copy, count, 0.50), 
+				percentile(copy, count, 0.90),
+				percentile(copy, count, 0.95),
+				percentile(copy, count, 0.99), 
+				this.totals.get(MAX));
+	}
+	
+	
+	/**
+	 * @param fraction - for example 0.95 for the 95th percentile
+	 * @return the value below which that fraction of the recorded latencies fall, in nanoseconds, 
+	 * 		   or 0 if nothing has been recorded
+	 */
+	public long percentile(double fraction)
+	{
+		long count = 0;
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			copy[i] = this.counts.get(i);
+			count += copy[i];
+		}
+		return percentile(copy, count, fraction);
+	}
+	
+	
+	// Find the bucket holding the given percentile and return its upper bound
+	private static long percentile(long[] counts, long count, double fraction)
+	{
+		if (count == 0)
+		{
+			return 0;
+		}
+		
+		long rank = (long) Math.ceil(count * fraction);
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+	
+	
+	// Values below 8 have a bucket each, above that the top 4 significant bits choose the bucket
+	static int bucket(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int) value;
+		}
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+	
+	
+	// The largest value which falls in a bucket
+	static long upperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+	
+	
+	/**
+	 * Point in time view of a histogram, with the values in microseconds
+	 */
+	public static class Snapshot
+	{
+		private final long count;
+		private final long mean;
+		private final long p50;
+		private final long p90;
+		private final long p95;
+		private final long p99;
+		private final long max;
+		
+		Snapshot(long count, long mean, long p50, long p90, long p95, long p99, long max)
+		{
+			this.count = count;
+			this.mean = TimeUnit.NANOSECONDS.toMicros(mean);
+			this.p50 = TimeUnit.NANOSECONDS.toMicros(p50);
+			this.p90 = TimeUnit.NANOSECONDS.toMicros(p90);
+			this.p95 = TimeUnit.NANOSECONDS.toMicros(p95);
+			this.p99 = TimeUnit.NANOSECONDS.toMicros(p99);
+			this.max = TimeUnit.NANOSECONDS.toMicros(max);
+		}
+
+		/**
+		 * @return number of values recorded
+		 */
+		public long getCount()
+		{
+			return count;
+		}
+
+		/**
+		 * @return mean latency in microseconds
+		 */
+		public long getMeanMicros()
+		{
+			return mean;
+		}
+
+		/**
+		 * @return median latency in microseconds
+		 */
+		public long getP50Micros()
+		{
+			return p50;
+		}
+
+		/**
+		 * @return 90th percentile latency in microseconds
+		 */
+		public long getP90Micros()
+		{
+			return p90;
+		}
+
+		/**
+		 * @return 95th percentile latency in microseconds
+		 */
+		public long getP95Micros()
+		{
+			return p95;
+		}
+
+		/**
+		 * @return 99th percentile latency in microseconds
+		 */
+		public long getP99Micros()
+		{
+			return p99;
+		}
+
+		/**
+		 * @return largest latency in microseconds
+		 */
+		public long getMaxMicros()
+		{
+			return max;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+
+/**
+ * 
+ * Metrics REST controller
+ * 
+ * Reports the counters kept by the sample, so that the effect of the tuning options can be observed.
+ */
+@RestController
+public class MetricsRestController 
+{
+	@Autowired
+	private EmployeeCache employeeCache;
+	
+	@Autowired
+	private SalaryWriteBehind salaryWriteBehind;
+	
+	@Autowired
+	private EmployeeMetrics employeeMetrics;
+	
+	@Autowired
+	private DataSourceRouter dataSourceRouter;
+	
+	@Autowired
+	private HedgedLookup hedgedLookup;
+	
+	@Autowired
+	private DataSourceExecutors dataSourceExecutors;
+	
+	@Autowired
+	private EmployeeSnapshot employeeSnapshot;
+	
+	@Autowired
+	private DataSourceWarmUp dataSourceWarmUp;
+	
+	@Autowired
+	private EmployeeChangeFeed employeeChangeFeed;
+	
+	@Autowired
+	private EmployeeVersions employeeVersions;
+	
+	// only created when employee.tx.onePhase=true
+	@Autowired(required = false)
+	private OnePhaseTransactionManager onePhaseTransactionManager;
+	
+	
+	/**
+	 * Employee cache counters
+	 * 
+	 * @return the hit, miss and eviction counts of the employee cache
+	 */
+	@GetMapping("/metrics/cache")
+	public EmployeeCache.Statistics getCacheStatistics()
+	{
+		return this.employeeCache.getStatistics();
+	}
+	
+	
+	/**
+	 * Salary write-behind counters
+	 * 
+	 * @return the queue depth and the queued, coalesced, rejected and flushed counts
+	 */
+	@GetMapping("/metrics/writeBehind")
+	public SalaryWriteBehind.Statistics getWriteBehindStatistics()
+	{
+		return this.salaryWriteBehind.getStatistics();
+	}
+	
+	
+	/**
+	 * EmployeeService latency histograms
+	 * 
+	 * @return count, mean, max and percentiles for each operation, DataSource and phase which has been used
+	 */
+	@GetMapping("/metrics/latency")
+	public List<EmployeeMetrics.Entry> getLatency()
+	{
+		return this.employeeMetrics.getEntries();
+	}
+	
+	
+	/**
+	 * Routing of the "auto" jdbcType
+	 * 
+	 * @return the number of requests routed to each DataSource, its in-flight count and moving average latency
+	 */
+	@GetMapping("/metrics/routing")
+	public Map<DataSourceType, DataSourceRouter.Statistics> getRouting()
+	{
+		return this.dataSourceRouter.getStatistics();
+	}
+	
+	
+	/**
+	 * Hedged employee lookups
+	 * 
+	 * @return the number of lookups hedged, how often the hedge answered first, and the current hedging delays
+	 */
+	@GetMapping("/metrics/hedging")
+	public HedgedLookup.Statistics getHedgingStatistics()
+	{
+		return this.hedgedLookup.getStatistics();
+	}
+	
+	
+	/**
+	 * Executors used by the /async requests
+	 * 
+	 * @return the pool size, active threads, queue depth and completed and rejected counts for each DataSource
+	 */
+	@GetMapping("/metrics/executors")
+	public Map<DataSourceType, DataSourceExecutors.Statistics> getExecutorStatistics()
+	{
+		return this.dataSourceExecutors.getStatistics();
+	}
+	
+	
+	/**
+	 * In-memory snapshot used by the /reports requests
+	 * 
+	 * @return the number of rows in the snapshot, its age, and the number of times it has been read and changed
+	 */
+	@GetMapping("/metrics/snapshot")
+	public EmployeeSnapshot.Statistics getSnapshotStatistics()
+	{
+		return this.employeeSnapshot.getStatistics();
+	}
+	
+	
+	/**
+	 * DataSource warm-up at startup
+	 * 
+	 * @return whether the warm-up of each DataSource has finished, the time it took and the work done
+	 */
+	@GetMapping("/metrics/warmup")
+	public Map<DataSourceType, DataSourceWarmUp.Statistics> getWarmUpStatistics()
+	{
+		return this.dataSourceWarmUp.getStatistics();
+	}
+	
+	
+	/**
+	 * Employee change feed
+	 * 
+	 * @return the number of subscribers, changes published and events sent
+	 */
+	@GetMapping("/metrics/changes")
+	public EmployeeChangeFeed.Statistics getChangeFeedStatistics()
+	{
+		return this.employeeChangeFeed.getStatistics();
+	}
+	
+	
+	/**
+	 * Conditional GET of the employee lists
+	 * 
+	 * @return the number of responses sent with an ETag, and requests answered with 304 Not Modified
+	 */
+	@GetMapping("/metrics/etag")
+	public EmployeeVersions.Statistics getETagStatistics()
+	{
+		return this.employeeVersions.getStatistics();
+	}
+	
+	
+	/**
+	 * Transactions of the @Transactional endpoints, when employee.tx.onePhase=true
+	 * 
+	 * @return the number of transactions committed locally on each DataSource and globally, or null if not enabled
+	 */
+	@GetMapping("/metrics/transactions")
+	public OnePhaseTransactionManager.Statistics getTransactionStatistics()
+	{
+		return this.onePhaseTransactionManager == null ? null : this.onePhaseTransactionManager.getStatistics();
+	}
+}
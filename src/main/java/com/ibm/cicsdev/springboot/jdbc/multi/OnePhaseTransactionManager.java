@@ -0,0 +1,396 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Transaction manager for the @Transactional endpoints which commits work on a single DataSource
+ * with a local, one-phase commit, and only uses a global (XA) transaction when it may use both
+ *
+ * The DataSource is taken from the {jdbcType} of the request being handled. A transaction started
+ * for type2 or type4 is a local JDBC transaction on a connection from that DataSource, committed with
+ * Connection.commit(), which for type 2 connectivity commits the CICS unit of work. A transaction started
+ * for auto, which may use either DataSource, or outside a request, is passed to the global transaction manager.
+ *
+ * The choice is made when the transaction begins, before its first connection is taken, as a local
+ * transaction cannot be moved to the global transaction manager once its connection has been used. So a
+ * connection from the other DataSource while the local transaction runs is refused (see TimedDataSource)
+ * and the transaction rolls back rather than committing part of the work. Once the local transaction has
+ * committed or rolled back the other DataSource can be used again, so synchronizations such as 
+ * EmployeeWriteEvents listeners may use either DataSource after the commit.
+ *
+ * Selected with employee.tx.onePhase=true, otherwise every transaction is global as before.
+ */
+public class OnePhaseTransactionManager implements PlatformTransactionManager
+{
+	// The DataSource of the local transaction running on this thread
+	private static final ThreadLocal<DataSource> LOCAL = new ThreadLocal<>();
+	
+	// Connections to a second DataSource refused inside a local transaction
+	private static final LongAdder REFUSED = new LongAdder();
+	
+	private final PlatformTransactionManager global;
+	private final Map<DataSourceType, DataSourceTransactionManager> local = new EnumMap<>(DataSourceType.class);
+	
+	// the manager which began the outermost transaction on this thread, used by any that join it
+	private final ThreadLocal<PlatformTransactionManager> current = new ThreadLocal<>();
+	
+	private final Map<DataSourceType, LongAdder> onePhaseCommits = new EnumMap<>(DataSourceType.class);
+	private final LongAdder onePhaseRollbacks = new LongAdder();
+	private final LongAdder globalCommits = new LongAdder();
+	private final LongAdder globalRollbacks = new LongAdder();
+	
+	
+	/**
+	 * @param global - the global (XA) transaction manager
+	 * @param type2 - the DataSource with type 2 connectivity, as used by its JdbcTemplate
+	 * @param type4 - the DataSource with type 4 connectivity, as used by its JdbcTemplate
+	 */
+	public OnePhaseTransactionManager(PlatformTransactionManager global, DataSource type2, DataSource type4)
+	{
+		this.global = global;
+		this.local.put(DataSourceType.TYPE2, new DataSourceTransactionManager(type2));
+		this.local.put(DataSourceType.TYPE4, new DataSourceTransactionManager(type4));
+		for (DataSourceType type : DataSourceType.values())
+		{
+			this.onePhaseCommits.put(type, new LongAdder());
+		}
+	}
+	
+	
+	@Override
+	public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException
+	{
+		PlatformTransactionManager manager = this.current.get();
+		if (manager != null)
+		{
+			// already in a transaction, let its manager decide how to join it
+			return new Status(manager, null, manager.getTransaction(definition), false);
+		}
+		
+		DataSourceType type = requestedType();
+		int propagation = definition == null ? TransactionDefinition.PROPAGATION_REQUIRED : definition.getPropagationBehavior();
+		if (type == null || propagation != TransactionDefinition.PROPAGATION_REQUIRED)
+		{
+			return begin(this.global, null, definition);
+		}
+		
+		return begin(this.local.get(type), type, definition);
+	}
+	
+	
+	// Start the outermost transaction on this thread
+	private TransactionStatus begin(PlatformTransactionManager manager, DataSourceType type, TransactionDefinition definition)
+	{
+		TransactionStatus status = manager.getTransaction(definition);
+		this.current.set(manager);
+		if (type != null)
+		{
+			LOCAL.set(this.local.get(type).getDataSource());
+			
+			// run first after the commit or rollback, so the other synchronizations can use either DataSource
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization()
+			{
+				@Override
+				public int getOrder()
+				{
+					return Ordered.HIGHEST_PRECEDENCE;
+				}
+				
+				@Override
+				public void afterCommit()
+				{
+					LOCAL.remove();
+				}
+				
+				@Override
+				public void afterCompletion(int status)
+				{
+					LOCAL.remove();
+				}
+			});
+		}
+		return new Status(manager, type, status, true);
+	}
+	
+	
+	@Override
+	public void commit(TransactionStatus status) throws TransactionException
+	{
+		Status s = (Status) status;
+		try
+		{
+			s.manager.commit(s.status);
+		}
+		catch (RuntimeException e)
+		{
+			if (s.isOutermost())
+			{
+				count(s, false);
+			}
+			throw e;
+		}
+		finally
+		{
+			end(s);
+		}
+		
+		if (s.isOutermost())
+		{
+			count(s, !s.status.isRollbackOnly());
+		}
+	}
+	
+	
+	@Override
+	public void rollback(TransactionStatus status) throws TransactionException
+	{
+		Status s = (Status) status;
+		try
+		{
+			s.manager.rollback(s.status);
+		}
+		finally
+		{
+			end(s);
+			if (s.isOutermost())
+			{
+				count(s, false);
+			}
+		}
+	}
+	
+	
+	// Forget the outermost transaction once it has completed
+	private void end(Status s)
+	{
+		if (s.isOutermost())
+		{
+			this.current.remove();
+			LOCAL.remove();
+		}
+	}
+	
+	
+	private void count(Status s, boolean committed)
+	{
+		if (s.type == null)
+		{
+			(committed ? this.globalCommits : this.globalRollbacks).increment();
+		}
+		else if (committed)
+		{
+			this.onePhaseCommits.get(s.type).increment();
+		}
+		else
+		{
+			this.onePhaseRollbacks.increment();
+		}
+	}
+	
+	
+	// The DataSource named by the {jdbcType} of the current request, or null if it could be either
+	private static DataSourceType requestedType()
+	{
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (attributes == null)
+		{
+			return null;
+		}
+		
+		Object variables = attributes.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+		Object jdbcType = variables instanceof Map ? ((Map<?, ?>) variables).get("jdbcType") : null;
+		
+		// matched without regard to case, as the request is routed by DataSourceType.of
+		if ("type2".equalsIgnoreCase((String) jdbcType) || "type4".equalsIgnoreCase((String) jdbcType))
+		{
+			return DataSourceType.of((String) jdbcType);
+		}
+		
+		// auto, or not a request for one DataSource
+		return null;
+	}
+	
+	
+	/**
+	 * Refuse a connection from a DataSource other than the one in the local transaction on this thread
+	 *
+	 * @param dataSource - the DataSource a connection is being taken from
+	 * @throws IllegalStateException if a local transaction is running on another DataSource
+	 */
+	static void checkConnection(DataSource dataSource)
+	{
+		DataSource local = LOCAL.get();
+		if (local != null && local != dataSource)
+		{
+			REFUSED.increment();
+			throw new IllegalStateException("A one-phase transaction cannot use a second DataSource, use the auto jdbcType for a global transaction");
+		}
+	}
+	
+	
+	// The status returned by the manager which began the transaction, and which DataSource it is local to
+	private static class Status extends SimpleTransactionStatus
+	{
+		final PlatformTransactionManager manager;
+		final DataSourceType type;
+		final TransactionStatus status;
+		final boolean outermost;
+		
+		Status(PlatformTransactionManager manager, DataSourceType type, TransactionStatus status, boolean outermost)
+		{
+			super(status.isNewTransaction());
+			this.manager = manager;
+			this.type = type;
+			this.status = status;
+			this.outermost = outermost;
+		}
+		
+		// true for the transaction begun by this manager, rather than one that joined it
+		boolean isOutermost()
+		{
+			return this.outermost;
+		}
+		
+		@Override
+		public void setRollbackOnly()
+		{
+			this.status.setRollbackOnly();
+		}
+		
+		@Override
+		public boolean isRollbackOnly()
+		{
+			return this.status.isRollbackOnly();
+		}
+		
+		@Override
+		public boolean isCompleted()
+		{
+			return this.status.isCompleted();
+		}
+		
+		@Override
+		public Object createSavepoint() throws TransactionException
+		{
+			return this.status.createSavepoint();
+		}
+		
+		@Override
+		public void rollbackToSavepoint(Object savepoint) throws TransactionException
+		{
+			this.status.rollbackToSavepoint(savepoint);
+		}
+		
+		@Override
+		public void releaseSavepoint(Object savepoint) throws TransactionException
+		{
+			this.status.releaseSavepoint(savepoint);
+		}
+		
+		@Override
+		public void flush()
+		{
+			this.status.flush();
+		}
+	}
+	
+	
+	/**
+	 * @return the number of transactions committed locally on each DataSource, and globally
+	 */
+	public Statistics getStatistics()
+	{
+		Map<DataSourceType, Long> commits = new EnumMap<>(DataSourceType.class);
+		this.onePhaseCommits.forEach((type, count) -> commits.put(type, count.sum()));
+		return new Statistics(commits, this.onePhaseRollbacks.sum(), this.globalCommits.sum(), this.globalRollbacks.sum(), REFUSED.sum());
+	}
+	
+	
+	/**
+	 * Counts of the transactions which took each path
+	 */
+	public static class Statistics
+	{
+		private final Map<DataSourceType, Long> onePhaseCommits;
+		private final long onePhaseRollbacks;
+		private final long globalCommits;
+		private final long globalRollbacks;
+		private final long refused;
+		
+		Statistics(Map<DataSourceType, Long> onePhaseCommits, long onePhaseRollbacks, long globalCommits, long globalRollbacks, long refused)
+		{
+			this.onePhaseCommits = onePhaseCommits;
+			this.onePhaseRollbacks = onePhaseRollbacks;
+			this.globalCommits = globalCommits;
+			this.globalRollbacks = globalRollbacks;
+			this.refused = refused;
+		}
+		
+		/**
+		 * @return the number of local transactions committed on each DataSource
+		 */
+		public Map<DataSourceType, Long> getOnePhaseCommits()
+		{
+			return onePhaseCommits;
+		}
+		
+		/**
+		 * @return the number of local transactions rolled back
+		 */
+		public long getOnePhaseRollbacks()
+		{
+			return onePhaseRollbacks;
+		}
+		
+		/**
+		 * @return the number of global (XA) transactions committed
+		 */
+		public long getGlobalCommits()
+		{
+			return globalCommits;
+		}
+		
+		/**
+		 * @return the number of global (XA) transactions rolled back
+		 */
+		public long getGlobalRollbacks()
+		{
+			return globalRollbacks;
+		}
+		
+		/**
+		 * @return the number of connections to a second DataSource refused inside a local transaction
+		 */
+		public long getRefused()
+		{
+			return refused;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+
+/**
+ * class representing the headcount and pay totals of a department, or of the whole EMP table
+ */
+public class PayrollSummary
+{
+	private String workdept;
+	private long employees;
+	private long salary;
+	private long bonus;
+	private long comm;
+
+
+	/**
+	 * @param workdept	- work department, or null for the whole table
+	 * @param employees	- number of employees
+	 * @param salary	- total salary
+	 * @param bonus		- total bonus
+	 * @param comm		- total commission
+	 */
+	public PayrollSummary(String workdept, long employees, long salary, long bonus, long comm)
+	{
+		this.workdept = workdept;
+		this.employees = employees;
+		this.salary = salary;
+		this.bonus = bonus;
+		this.comm = comm;
+	}
+
+	/**
+	 * @return work department, or null for the whole table
+	 */
+	public String getWorkdept()
+	{
+		return workdept;
+	}
+
+	/**
+	 * @return number of employees
+	 */
+	public long getEmployees()
+	{
+		return employees;
+	}
+
+	/**
+	 * @return total salary
+	 */
+	public long getSalary()
+	{
+		return salary;
+	}
+
+	/**
+	 * @return total bonus
+	 */
+	public long getBonus()
+	{
+		return bonus;
+	}
+
+	/**
+	 * @return total commission
+	 */
+	public long getComm()
+	{
+		return comm;
+	}
+
+	/**
+	 * @return average salary, or 0 if there are no employees
+	 */
+	public double getAverageSalary()
+	{
+		return employees == 0 ? 0 : (double) salary / employees;
+	}
+}
@@ -0,0 +1,34 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * The original employee number allocator - a random number between 300000 and 999999
+ * 
+ * Needs nothing in the database, but as the table fills up more of the numbers 
+ * are already in use and more inserts fail with a duplicate key.
+ */
+@Component
+@ConditionalOnProperty(name = "employee.empno.allocator", havingValue = "random", matchIfMissing = true)
+public class RandomEmpnoAllocator implements EmpnoAllocator 
+{
+	@Override
+	public String next(DataSourceType type) 
+	{
+		int max = 999999;
+		int min = 300000;
+		return String.valueOf((int) Math.round((Math.random()*((max-min)+1))+min));
+	}
+}
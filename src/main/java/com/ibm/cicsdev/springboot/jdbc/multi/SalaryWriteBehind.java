@@ -0,0 +1,468 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Optional write-behind queue for salary updates
+ * 
+ * When enabled, salary updates made outside a transaction are queued rather than run straight away.
+ * Updates to the same employee number are coalesced (the last one wins), and the queue for each 
+ * DataSource is flushed as a single JDBC batch at the end of every window, when a flush is requested, 
+ * and when the application stops.
+ * 
+ * The number of queued employees is bounded - once the queue is full, updates are run synchronously as before.
+ * If a batch fails its updates are written one at a time, and any which Db2 still rejects are logged and dropped,
+ * so one bad update can't stop the others being written. If Db2 can't be reached they are kept for the next flush.
+ * An update run synchronously, or a delete, first drops any update queued for the same employee, so the
+ * last change made is the one that stays.
+ */
+@Component
+public class SalaryWriteBehind 
+{
+	private static final Logger LOG = LoggerFactory.getLogger(SalaryWriteBehind.class);
+	
+	@Value("${employee.writeBehind.enabled:false}")
+	private boolean enabled;
+	
+	@Value("${employee.writeBehind.windowMillis:1000}")
+	private long windowMillis;
+	
+	@Value("${employee.writeBehind.maxPending:10000}")
+	private int maxPending;
+	
+	@Autowired
+	@Qualifier("type2JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT2;
+	
+	@Autowired
+	@Qualifier("type4JdbcTemplate")
+	private JdbcTemplate jdbcTemplateT4;
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private EmployeeWriteEvents writeEvents;
+	
+	@Autowired
+	private ThreadFactory threadFactory;
+	
+	// pending salary for each employee number, per DataSource
+	private final Map<DataSourceType, ConcurrentHashMap<String, Integer>> pending = new EnumMap<>(DataSourceType.class);
+	
+	private ScheduledExecutorService scheduler;
+	
+	private final LongAdder queued = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder flushed = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	
+	
+	public SalaryWriteBehind()
+	{
+		for (DataSourceType type : DataSourceType.values())
+		{
+			this.pending.put(type, new ConcurrentHashMap<>());
+		}
+	}
+	
+	
+	// Start flushing at the end of each window
+	@PostConstruct
+	void start()
+	{
+		if (this.enabled)
+		{
+			this.scheduler = new ScheduledThreadPoolExecutor(1, this.threadFactory);
+			this.scheduler.scheduleWithFixedDelay(this::flushQuietly, this.windowMillis, this.windowMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	
+	// Stop the timer, then write out anything still queued
+	@PreDestroy
+	void stop() throws InterruptedException
+	{
+		if (this.scheduler != null)
+		{
+			this.scheduler.shutdown();
+			this.scheduler.awaitTermination(this.windowMillis * 2, TimeUnit.MILLISECONDS);
+			flushQuietly();
+		}
+	}
+	
+	
+	/**
+	 * Queue a salary update
+	 * 
+	 * @param type - the DataSource to update
+	 * @param empNo - the employee number
+	 * @param salary - the new salary
+	 * @return true if the update was queued, false if it must be run now - because write-behind 
+	 * 		   is disabled, the caller is in a transaction, or the queue is full
+	 */
+	public boolean submit(DataSourceType type, String empNo, int salary)
+	{
+		if (!this.enabled || TransactionSynchronizationManager.isActualTransactionActive())
+		{
+			return false;
+		}
+		
+		ConcurrentHashMap<String, Integer> updates = this.pending.get(type);
+		if (updates.size() >= this.maxPending && !updates.containsKey(empNo))
+		{
+			this.rejected.increment();
+			return false;
+		}
+		
+		if (updates.put(empNo, salary) == null)
+		{
+			this.queued.increment();
+		}
+		else
+		{
+			this.coalesced.increment();
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Drop any update queued for an employee which the caller is about to update or delete directly,
+	 * so a later flush can't write the older salary over the caller's change
+	 * 
+	 * Waits for a flush in progress, which may hold an older salary for the employee, to complete.
+	 * If the caller's transaction rolls back, the dropped update is queued again.
+	 * 
+	 * @param type - the DataSource to be updated
+	 * @param empNo - the employee number
+	 */
+	public synchronized void discard(DataSourceType type, String empNo)
+	{
+		if (!this.enabled)
+		{
+			return;
+		}
+		
+		ConcurrentHashMap<String, Integer> updates = this.pending.get(type);
+		Integer salary = updates.remove(empNo);
+		if (salary != null && TransactionSynchronizationManager.isSynchronizationActive())
+		{
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() 
+			{
+				@Override
+				public void afterCompletion(int status)
+				{
+					if (status == STATUS_ROLLED_BACK)
+					{
+						updates.putIfAbsent(empNo, salary);
+					}
+				}
+			});
+		}
+	}
+	
+	
+	/**
+	 * Write all queued updates to the database, one batch per DataSource
+	 * 
+	 * @return the number of employees updated on each DataSource
+	 */
+	public synchronized Map<DataSourceType, Integer> flush()
+	{
+		Map<DataSourceType, Integer> result = new EnumMap<>(DataSourceType.class);
+		
+		// a DataSource which can't be written to doesn't hold up the other
+		DataAccessException failure = null;
+		for (DataSourceType type : DataSourceType.values())
+		{
+			try
+			{
+				result.put(type, flush(type, type == DataSourceType.TYPE2 ? this.jdbcTemplateT2 : this.jdbcTemplateT4));
+			}
+			catch (DataAccessException e)
+			{
+				if (failure == null)
+				{
+					failure = e;
+				}
+				else
+				{
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		
+		if (failure != null)
+		{
+			throw failure;
+		}
+		return result;
+	}
+	
+	
+	// Flush from the timer, where there is nobody to report a failure to
+	private void flushQuietly()
+	{
+		try
+		{
+			flush();
+		}
+		catch (RuntimeException e)
+		{
+			LOG.error("Salary write-behind flush failed", e);
+		}
+	}
+	
+	
+	// Flush the queue for one DataSource
+	private int flush(DataSourceType type, JdbcTemplate jdbcTemplate)
+	{
+		ConcurrentHashMap<String, Integer> updates = this.pending.get(type);
+		if (updates.isEmpty())
+		{
+			return 0;
+		}
+		
+		// Take each entry off the queue - an update arriving after its entry has been
+		// removed is queued again for the next flush
+		List<Object[]> batch = new ArrayList<>(updates.size());
+		for (String empNo : updates.keySet())
+		{
+			Integer salary = updates.remove(empNo);
+			if (salary != null)
+			{
+				batch.add(new Object[] {salary, empNo});
+			}
+		}
+		
+		try
+		{
+			int updated = write(type, jdbcTemplate, batch);
+			this.batches.increment();
+			return updated;
+		}
+		catch (DataAccessException e)
+		{
+			if (isOutage(e))
+			{
+				requeue(updates, batch);
+				throw e;
+			}
+			
+			// one bad row fails the whole batch, so write the rows one at a time and drop those which still fail
+			LOG.warn("Salary write-behind batch of {} updates on {} failed, writing them one at a time", batch.size(), type, e);
+			int updated = 0;
+			for (int i = 0; i < batch.size(); i++)
+			{
+				Object[] update = batch.get(i);
+				try
+				{
+					updated += write(type, jdbcTemplate, batch.subList(i, i + 1));
+				}
+				catch (DataAccessException rowFailure)
+				{
+					if (isOutage(rowFailure))
+					{
+						requeue(updates, batch.subList(i, batch.size()));
+						throw rowFailure;
+					}
+					
+					this.failed.increment();
+					LOG.error("Salary write-behind update of employee {} to {} on {} failed and was dropped", update[1], update[0], type, rowFailure);
+				}
+			}
+			return updated;
+		}
+	}
+	
+	
+	// Write a batch of updates in one transaction, returning the number of employees updated
+	private int write(DataSourceType type, JdbcTemplate jdbcTemplate, List<Object[]> batch)
+	{
+		int written = new TransactionTemplate(this.transactionManager).execute(status -> 
+		{
+			int[] counts = jdbcTemplate.batchUpdate(EmployeeService.UPDATE_SALARY_SQL, batch);
+			int updated = 0;
+			for (int i = 0; i < batch.size(); i++)
+			{
+				if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO)
+				{
+					this.writeEvents.salaryUpdated(type, (String) batch.get(i)[1], (Integer) batch.get(i)[0]);
+					updated++;
+				}
+			}
+			return updated;
+		});
+		
+		this.flushed.add(written);
+		return written;
+	}
+	
+	
+	// A failure to reach the database, rather than a problem with the rows, so the updates are kept for the next flush
+	private static boolean isOutage(DataAccessException e)
+	{
+		return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+				|| e instanceof DataAccessResourceFailureException;
+	}
+	
+	
+	// Put updates back on the queue, unless a newer salary has been queued in the meantime
+	private static void requeue(Map<String, Integer> updates, List<Object[]> batch)
+	{
+		for (Object[] update : batch)
+		{
+			updates.putIfAbsent((String) update[1], (Integer) update[0]);
+		}
+	}
+	
+	
+	/**
+	 * @return the write-behind counters
+	 */
+	public Statistics getStatistics()
+	{
+		int depth = 0;
+		for (Map<String, Integer> updates : this.pending.values())
+		{
+			depth += updates.size();
+		}
+		
+		return new Statistics(this.enabled, depth, this.queued.sum(), this.coalesced.sum(), 
+				this.rejected.sum(), this.flushed.sum(), this.batches.sum(), this.failed.sum());
+	}
+	
+	
+	/**
+	 * Snapshot of the write-behind counters
+	 */
+	public static class Statistics
+	{
+		private final boolean enabled;
+		private final int depth;
+		private final long queued;
+		private final long coalesced;
+		private final long rejected;
+		private final long flushed;
+		private final long batches;
+		private final long failed;
+		
+		Statistics(boolean enabled, int depth, long queued, long coalesced, long rejected, long flushed, long batches, long failed)
+		{
+			this.enabled = enabled;
+			this.depth = depth;
+			this.queued = queued;
+			this.coalesced = coalesced;
+			this.rejected = rejected;
+			this.flushed = flushed;
+			this.batches = batches;
+			this.failed = failed;
+		}
+
+		/**
+		 * @return true if write-behind is enabled
+		 */
+		public boolean isEnabled()
+		{
+			return enabled;
+		}
+
+		/**
+		 * @return the number of employees with a queued update
+		 */
+		public int getDepth()
+		{
+			return depth;
+		}
+
+		/**
+		 * @return the number of updates queued for an employee with no update already queued
+		 */
+		public long getQueued()
+		{
+			return queued;
+		}
+
+		/**
+		 * @return the number of updates which replaced an update already queued for the same employee
+		 */
+		public long getCoalesced()
+		{
+			return coalesced;
+		}
+
+		/**
+		 * @return the number of updates run synchronously because the queue was full
+		 */
+		public long getRejected()
+		{
+			return rejected;
+		}
+
+		/**
+		 * @return the number of updates written to the database
+		 */
+		public long getFlushed()
+		{
+			return flushed;
+		}
+
+		/**
+		 * @return the number of JDBC batches written
+		 */
+		public long getBatches()
+		{
+			return batches;
+		}
+
+		/**
+		 * @return the number of updates dropped because Db2 rejected them, such as a salary too large for the column
+		 */
+		public long getFailed()
+		{
+			return failed;
+		}
+	}
+}
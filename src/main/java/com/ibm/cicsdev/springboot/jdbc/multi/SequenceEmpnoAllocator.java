@@ -0,0 +1,47 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Reserves blocks of employee numbers from a Db2 sequence
+ * 
+ * Each value of the sequence is the first number of a block, so the sequence must 
+ * increment by employee.empno.blockSize. It must start above every employee number 
+ * already in the table, such as those given out by RandomEmpnoAllocator, so first find
+ * 
+ *    SELECT MAX(INTEGER(EMPNO)) + 1 FROM EMP
+ * 
+ * and use that value as the start, for example:
+ * 
+ *    CREATE SEQUENCE EMPNO_SEQ AS INTEGER START WITH 200341 INCREMENT BY 100 NO CYCLE
+ * 
+ * Sequence values are not part of any transaction, so a block is never given out twice.
+ */
+@Component
+@ConditionalOnProperty(name = "employee.empno.allocator", havingValue = "sequence")
+public class SequenceEmpnoAllocator extends BlockEmpnoAllocator 
+{
+	@Value("${employee.empno.sequence:EMPNO_SEQ}")
+	private String sequence;
+	
+	
+	@Override
+	protected long reserve(JdbcTemplate jdbcTemplate, int size) 
+	{
+		return jdbcTemplate.queryForObject("VALUES NEXT VALUE FOR " + this.sequence, Long.class);
+	}
+}
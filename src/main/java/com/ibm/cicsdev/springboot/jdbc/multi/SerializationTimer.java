@@ -0,0 +1,77 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+
+/**
+ * Times the SERIALIZATION phase of an EmployeeService operation - from just before 
+ * the response body is written until the request completes
+ * 
+ * Registered as a HandlerInterceptor by WebConfiguration.
+ */
+@ControllerAdvice
+public class SerializationTimer implements ResponseBodyAdvice<Object>, HandlerInterceptor
+{
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+	{
+		// forget anything left over from an earlier request on this thread
+		EmployeeMetrics.Timer timer = EmployeeMetrics.current();
+		if (timer != null)
+		{
+			timer.stopSerialization();
+		}
+		return true;
+	}
+
+	
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) 
+	{
+		return true;
+	}
+
+	
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request, ServerHttpResponse response) 
+	{
+		EmployeeMetrics.Timer timer = EmployeeMetrics.current();
+		if (timer != null)
+		{
+			timer.startSerialization();
+		}
+		return body;
+	}
+
+	
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex)
+	{
+		EmployeeMetrics.Timer timer = EmployeeMetrics.current();
+		if (timer != null)
+		{
+			timer.stopSerialization();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A bounded set of shared String instances, for columns with only a few distinct values
+ *
+ * Every row read from the database has its own copy of each String, so thousands of employees
+ * in the same department hold thousands of identical "D11"s. Passing each value through
+ * canonical() means they all hold the one instance instead.
+ *
+ * Once the dictionary is full, new values are returned as they are, so a column with more
+ * distinct values than expected costs a lookup but never grows the dictionary without limit.
+ */
+public class StringDictionary
+{
+	private final int capacity;
+	
+	private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+	
+	
+	/**
+	 * @param capacity - the most distinct values to keep
+	 */
+	public StringDictionary(int capacity)
+	{
+		this.capacity = capacity;
+	}
+	
+	
+	/**
+	 * @param value - a column value, or null
+	 * @return the shared instance equal to value, or value itself if the dictionary is full
+	 */
+	public String canonical(String value)
+	{
+		if (value == null)
+		{
+			return null;
+		}
+		
+		String shared = this.values.get(value);
+		if (shared != null)
+		{
+			return shared;
+		}
+		
+		// the size is only approximate under contention, so the limit may be passed by a few values
+		if (this.values.size() >= this.capacity)
+		{
+			return value;
+		}
+		shared = this.values.putIfAbsent(value, value);
+		return shared != null ? shared : value;
+	}
+	
+	
+	/**
+	 * @return the number of distinct values held
+	 */
+	public int size()
+	{
+		return this.values.size();
+	}
+}
@@ -0,0 +1,63 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Reserves blocks of employee numbers from a high-water-mark table holding the next free number
+ * 
+ *    CREATE TABLE EMPNO_HWM (NEXT_EMPNO INTEGER NOT NULL)
+ *    INSERT INTO EMPNO_HWM SELECT MAX(INTEGER(EMPNO)) + 1 FROM EMP
+ * 
+ * The table is seeded from the highest employee number already in use, such as those 
+ * given out by RandomEmpnoAllocator, so that no block overlaps an existing employee.
+ * 
+ * The number is advanced by a block and read back in a transaction of its own, so the row is 
+ * locked only for that short time, and a block is kept even if the caller's transaction rolls back.
+ */
+@Component
+@ConditionalOnProperty(name = "employee.empno.allocator", havingValue = "table")
+public class TableEmpnoAllocator extends BlockEmpnoAllocator 
+{
+	@Value("${employee.empno.table:EMPNO_HWM}")
+	private String table;
+	
+	private TransactionTemplate transactionTemplate;
+	
+	
+	@Autowired
+	void setTransactionManager(PlatformTransactionManager transactionManager)
+	{
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+	
+	
+	@Override
+	protected long reserve(JdbcTemplate jdbcTemplate, int size) 
+	{
+		return this.transactionTemplate.execute(status -> 
+		{
+			// the update locks the row until commit, so the value read back is this node's
+			jdbcTemplate.update("UPDATE " + this.table + " SET NEXT_EMPNO = NEXT_EMPNO + ?", size);
+			return jdbcTemplate.queryForObject("SELECT NEXT_EMPNO FROM " + this.table, Long.class) - size;
+		});
+	}
+}
@@ -0,0 +1,81 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+
+/**
+ * DataSource wrapper which adds the time taken to get a connection 
+ * to the CONNECTION phase of the operation running on the current thread,
+ * and refuses a connection that a one-phase transaction on the other DataSource could not include
+ */
+public class TimedDataSource extends DelegatingDataSource 
+{
+	/**
+	 * @param dataSource - the DataSource to time
+	 */
+	public TimedDataSource(DataSource dataSource)
+	{
+		super(dataSource);
+	}
+
+	
+	@Override
+	public Connection getConnection() throws SQLException 
+	{
+		// a local transaction on the other DataSource can't include this one (see OnePhaseTransactionManager)
+		OnePhaseTransactionManager.checkConnection(this);
+		
+		long start = System.nanoTime();
+		try
+		{
+			return super.getConnection();
+		}
+		finally
+		{
+			addConnectionTime(System.nanoTime() - start);
+		}
+	}
+
+	
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException 
+	{
+		// a local transaction on the other DataSource can't include this one (see OnePhaseTransactionManager)
+		OnePhaseTransactionManager.checkConnection(this);
+		
+		long start = System.nanoTime();
+		try
+		{
+			return super.getConnection(username, password);
+		}
+		finally
+		{
+			addConnectionTime(System.nanoTime() - start);
+		}
+	}
+	
+	
+	private static void addConnectionTime(long nanos)
+	{
+		EmployeeMetrics.Timer timer = EmployeeMetrics.current();
+		if (timer != null)
+		{
+			timer.addConnection(nanos);
+		}
+	}
+}
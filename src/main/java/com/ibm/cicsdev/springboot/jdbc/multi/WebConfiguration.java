@@ -0,0 +1,34 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+
+/**
+ * Spring MVC configuration for the sample
+ */
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer 
+{
+	@Autowired
+	private SerializationTimer serializationTimer;
+	
+	
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) 
+	{
+		registry.addInterceptor(this.serializationTimer);
+	}
+}
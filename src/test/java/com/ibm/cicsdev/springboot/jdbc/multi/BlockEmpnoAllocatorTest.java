@@ -0,0 +1,137 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+
+/**
+ * Tests that BlockEmpnoAllocator hands out each reserved number once, however many threads use up a block at the same time
+ */
+class BlockEmpnoAllocatorTest
+{
+	private static final int BLOCK_SIZE = 10;
+
+
+	// Reserves consecutive blocks, slowly enough that other threads find the block used up meanwhile
+	private static class CountingAllocator extends BlockEmpnoAllocator
+	{
+		final AtomicLong nextStart;
+		final AtomicInteger reserved = new AtomicInteger();
+
+		CountingAllocator(long firstStart) throws ReflectiveOperationException
+		{
+			this.nextStart = new AtomicLong(firstStart);
+
+			// normally set from employee.empno.blockSize
+			Field blockSize = BlockEmpnoAllocator.class.getDeclaredField("blockSize");
+			blockSize.setAccessible(true);
+			blockSize.setInt(this, BLOCK_SIZE);
+		}
+
+		@Override
+		protected long reserve(JdbcTemplate jdbcTemplate, int size)
+		{
+			this.reserved.incrementAndGet();
+			Thread.yield();
+			return this.nextStart.getAndAdd(size);
+		}
+	}
+
+
+	@Test
+	void concurrentCallersShareEachBlock() throws Exception
+	{
+		int threads = 8;
+		int perThread = 1000;
+		CountingAllocator allocator = new CountingAllocator(300000);
+
+		Set<String> allocated = ConcurrentHashMap.newKeySet();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < threads; t++)
+			{
+				futures.add(executor.submit(() ->
+				{
+					start.await();
+					for (int i = 0; i < perThread; i++)
+					{
+						allocated.add(allocator.next(DataSourceType.TYPE4));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures)
+			{
+				future.get();
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		// no number given out twice, and only one block reserved each time a block was used up
+		int total = threads * perThread;
+		assertEquals(total, allocated.size());
+		assertEquals(total / BLOCK_SIZE, allocator.reserved.get());
+		for (int i = 0; i < total; i++)
+		{
+			assertTrue(allocated.contains(String.valueOf(300000 + i)), "employee number " + (300000 + i));
+		}
+	}
+
+
+	@Test
+	void eachDataSourceHasItsOwnBlock() throws Exception
+	{
+		CountingAllocator allocator = new CountingAllocator(300000);
+
+		assertEquals("300000", allocator.next(DataSourceType.TYPE2));
+		assertEquals("300010", allocator.next(DataSourceType.TYPE4));
+		assertEquals("300001", allocator.next(DataSourceType.TYPE2));
+		assertEquals(2, allocator.reserved.get());
+	}
+
+
+	@Test
+	void blockPastTheLargestEmployeeNumberIsRefused() throws Exception
+	{
+		CountingAllocator allocator = new CountingAllocator(999990);
+		for (int i = 0; i < BLOCK_SIZE; i++)
+		{
+			allocator.next(DataSourceType.TYPE4);
+		}
+
+		assertThrows(IllegalStateException.class, () -> allocator.next(DataSourceType.TYPE4));
+	}
+}
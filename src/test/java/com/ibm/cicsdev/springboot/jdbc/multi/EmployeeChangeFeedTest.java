@@ -0,0 +1,115 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the ring of recent changes behind the EmployeeChangeFeed
+ */
+class EmployeeChangeFeedTest
+{
+	// Publish changes for employees 1 to count
+	private static EmployeeChangeFeed.Ring ring(int capacity, int count)
+	{
+		EmployeeChangeFeed.Ring ring = new EmployeeChangeFeed.Ring(capacity);
+		for (int i = 1; i <= count; i++)
+		{
+			ring.publish(EmployeeChange.DELETED, String.valueOf(i), null, null);
+		}
+		return ring;
+	}
+
+
+	private static List<Long> sequences(List<EmployeeChange> changes)
+	{
+		return changes.stream().map(EmployeeChange::getSequence).collect(Collectors.toList());
+	}
+
+
+	@Test
+	void emptyRing()
+	{
+		EmployeeChangeFeed.Ring ring = ring(4, 0);
+		List<EmployeeChange> changes = new ArrayList<>();
+
+		assertEquals(0, ring.latest());
+		assertTrue(ring.read(0, changes, 10));
+		assertTrue(changes.isEmpty());
+
+		// a position ahead of the ring, for example from before a restart
+		assertFalse(ring.read(1, changes, 10));
+	}
+
+
+	@Test
+	void readWrapsAround()
+	{
+		// 6 changes in 4 slots, so 1 and 2 have been written over
+		EmployeeChangeFeed.Ring ring = ring(4, 6);
+		List<EmployeeChange> changes = new ArrayList<>();
+
+		assertEquals(6, ring.latest());
+		assertTrue(ring.read(2, changes, 10));
+		assertEquals(Arrays.asList(3L, 4L, 5L, 6L), sequences(changes));
+		assertEquals("3", changes.get(0).getEmpNo());
+
+		changes.clear();
+		assertTrue(ring.read(5, changes, 10));
+		assertEquals(Arrays.asList(6L), sequences(changes));
+
+		changes.clear();
+		assertTrue(ring.read(6, changes, 10));
+		assertTrue(changes.isEmpty());
+	}
+
+
+	@Test
+	void readStopsAtMax()
+	{
+		EmployeeChangeFeed.Ring ring = ring(4, 6);
+		List<EmployeeChange> changes = new ArrayList<>();
+
+		assertTrue(ring.read(2, changes, 3));
+		assertEquals(Arrays.asList(3L, 4L, 5L), sequences(changes));
+	}
+
+
+	@Test
+	void subscriberTooFarBehindIsReset()
+	{
+		EmployeeChangeFeed.Ring ring = ring(4, 6);
+		List<EmployeeChange> changes = new ArrayList<>();
+
+		// change 2 is no longer held, so a subscriber at 1 has missed it
+		assertFalse(ring.read(1, changes, 10));
+		assertTrue(changes.isEmpty());
+
+		// as the subscriber does, carry on from the latest change
+		long position = ring.latest();
+		assertTrue(ring.read(position, changes, 10));
+		assertTrue(changes.isEmpty());
+
+		ring.publish(EmployeeChange.DELETED, "7", null, null);
+		assertTrue(ring.read(position, changes, 10));
+		assertEquals(Arrays.asList(7L), sequences(changes));
+	}
+}
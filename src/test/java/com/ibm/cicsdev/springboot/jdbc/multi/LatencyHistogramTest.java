@@ -0,0 +1,123 @@
+/* Licensed Materials - Property of IBM                                   */
+/*                                                                        */
+/* SAMPLE                                                                 */
+/*                                                                        */
+/* (c) Copyright IBM Corp. 2020 All Rights Reserved                       */
+/*                                                                        */
+/* US Government Users Restricted Rights - Use, duplication or disclosure */
+/* restricted by GSA ADP Schedule Contract with IBM Corp                  */
+/*                                                                        */
+
+package com.ibm.cicsdev.springboot.jdbc.multi;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the bucket boundaries and percentiles of LatencyHistogram
+ */
+class LatencyHistogramTest
+{
+	@Test
+	void smallValuesHaveABucketEach()
+	{
+		for (int value = 0; value < 8; value++)
+		{
+			assertEquals(value, LatencyHistogram.bucket(value));
+			assertEquals(value, LatencyHistogram.upperBound(value));
+		}
+	}
+
+
+	@Test
+	void bucketBoundaries()
+	{
+		assertEquals(7, LatencyHistogram.bucket(7));
+		assertEquals(8, LatencyHistogram.bucket(8));
+		assertEquals(15, LatencyHistogram.bucket(15));
+		assertEquals(16, LatencyHistogram.bucket(16));
+
+		// from 16 each bucket holds more than one value
+		assertEquals(16, LatencyHistogram.bucket(17));
+		assertEquals(17, LatencyHistogram.upperBound(16));
+		assertEquals(17, LatencyHistogram.bucket(18));
+	}
+
+
+	@Test
+	void largestValueFallsInTheLastBucket()
+	{
+		int last = LatencyHistogram.bucket(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+		assertEquals(last - 1, LatencyHistogram.bucket(LatencyHistogram.upperBound(last - 1)));
+	}
+
+
+	@Test
+	void bucketsAreContiguous()
+	{
+		int last = LatencyHistogram.bucket(Long.MAX_VALUE);
+		for (int bucket = 0; bucket < last; bucket++)
+		{
+			long upper = LatencyHistogram.upperBound(bucket);
+			assertEquals(bucket, LatencyHistogram.bucket(upper), "upper bound of bucket " + bucket);
+			assertEquals(bucket + 1, LatencyHistogram.bucket(upper + 1), "value after bucket " + bucket);
+		}
+	}
+
+
+	@Test
+	void percentileOfNothingIsZero()
+	{
+		assertEquals(0, new LatencyHistogram().percentile(0.5));
+	}
+
+
+	@Test
+	void percentileOfSmallValuesIsExact()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 0; value < 8; value++)
+		{
+			histogram.record(value);
+		}
+
+		// the rank is rounded up, so the median of 8 values is the 4th
+		assertEquals(3, histogram.percentile(0.5));
+		assertEquals(7, histogram.percentile(1.0));
+		assertEquals(0, histogram.percentile(0.1));
+	}
+
+
+	@Test
+	void percentileIsWithinOneBucket()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int value = 1; value <= 1000; value++)
+		{
+			histogram.record(value);
+		}
+
+		double[] fractions = {0.5, 0.9, 0.95, 0.99, 1.0};
+		for (double fraction : fractions)
+		{
+			long exact = (long) Math.ceil(1000 * fraction);
+			long percentile = histogram.percentile(fraction);
+			assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(exact)), percentile, "percentile " + fraction);
+			assertTrue(percentile >= exact && percentile <= exact * 1.125, "percentile " + fraction + " was " + percentile);
+		}
+	}
+
+
+	@Test
+	void negativeValuesAreRecordedAsZero()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(0, histogram.percentile(1.0));
+		assertEquals(1, histogram.snapshot().getCount());
+	}
+}